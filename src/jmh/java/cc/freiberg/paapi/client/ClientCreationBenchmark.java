@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ecs.client.jax.AWSECommerceService;
+import com.ecs.client.jax.AWSECommerceServicePortType;
+
+/**
+ * Cost of every further port once the JVM is warm. {@code shared} creates the port from the JVM wide service,
+ * {@code perClient} builds a service per port from the bundled WSDL as every client did before.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(2)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@State(Scope.Benchmark)
+public class ClientCreationBenchmark {
+
+    @Param({ "shared", "perClient" })
+    public String service;
+
+    @Setup
+    public void setUp() {
+        PaapiService.getService();
+    }
+
+    @Benchmark
+    public AWSECommerceServicePortType nextPort() {
+        if ("shared".equals(service)) {
+            return PaapiService.createPort("DE", ColdStartBenchmark.SECRET_KEY);
+        }
+        final AWSECommerceService perClient = new AWSECommerceService(
+                PaapiService.class.getResource(PaapiService.WSDL_RESOURCE));
+        perClient.setHandlerResolver(new AwsHandlerResolver(ColdStartBenchmark.SECRET_KEY));
+        return Marketplace.fromString("DE").getPort(perClient);
+    }
+}
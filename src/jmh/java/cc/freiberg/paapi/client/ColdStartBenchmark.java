@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ecs.client.jax.AWSECommerceService;
+import com.ecs.client.jax.AWSECommerceServicePortType;
+
+/**
+ * Time until the first port of a fresh JVM is ready: class loading, reading the WSDL and building the JAX-WS runtime
+ * model. Every measurement runs in a JVM of its own. {@code remote} fetches the WSDL from Amazon as the client did
+ * before the WSDL was bundled and needs network access.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(10)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@State(Scope.Benchmark)
+public class ColdStartBenchmark {
+
+    static final String SECRET_KEY = "1234567890abcdefghijklmnopqrstuvwxyzABCD";
+
+    @Param({ "bundled", "remote" })
+    public String wsdl;
+
+    @Benchmark
+    public AWSECommerceServicePortType firstPort() {
+        if ("bundled".equals(wsdl)) {
+            return PaapiService.createPort("DE", SECRET_KEY);
+        }
+        final AWSECommerceService service = new AWSECommerceService();
+        service.setHandlerResolver(new AwsHandlerResolver(SECRET_KEY));
+        return Marketplace.fromString("DE").getPort(service);
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.security.GeneralSecurityException;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Timestamp and signature of one request. {@code signer} is the usual case of a signature already computed within
+ * the same second, {@code pooledMac} computes a new signature for every request with a pooled {@link Mac},
+ * {@code perRequest} is the former handler creating the Mac and the date format for every request. Run with
+ * {@code -prof gc} to see the allocations per request.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class RequestSignerBenchmark {
+
+    private static final String OPERATION = "ItemLookup";
+
+    private final RequestSigner signer = new RequestSigner(ColdStartBenchmark.SECRET_KEY);
+    private final String[] timeStamps = new String[256];
+    private byte[] secretBytes;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        secretBytes = RequestSigner.stringToUtf8(ColdStartBenchmark.SECRET_KEY);
+        for (int i = 0; i < timeStamps.length; i++) {
+            timeStamps[i] = String.format("2018-01-01T00:%02d:%02dZ", i / 60, i % 60);
+        }
+    }
+
+    @Benchmark
+    public String signer() {
+        return signer.getSignature(OPERATION, signer.getTimestamp());
+    }
+
+    @Benchmark
+    public String pooledMac() {
+        // A new timestamp every time, so the signature is never taken from the cache
+        next = (next + 1) & (timeStamps.length - 1);
+        return signer.getSignature(OPERATION, timeStamps[next]);
+    }
+
+    @Benchmark
+    public String perRequest() throws GeneralSecurityException {
+        final SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        final String timeStamp = dateFormat.format(Calendar.getInstance().getTime());
+        final Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(secretBytes, "HmacSHA256"));
+        mac.update(RequestSigner.stringToUtf8(OPERATION + timeStamp));
+        return new String(Base64.encodeBase64(mac.doFinal()));
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.soap.MessageFactory;
+import javax.xml.soap.SOAPException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.ecs.client.jax.Item;
+import com.ecs.client.jax.ItemAttributes;
+import com.ecs.client.jax.ItemLookupResponse;
+import com.ecs.client.jax.Items;
+import com.ecs.client.jax.OperationRequest;
+import com.ecs.client.jax.Request;
+
+/**
+ * Decoding an ItemLookupResponse. {@code stax} streams the envelope into the unmarshaller, {@code saaj} parses it into
+ * a SAAJ DOM first and unmarshals the body content, as the JAX-WS runtime does.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(2)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class ResponseDecoderBenchmark {
+
+    @Param({ "stax", "saaj" })
+    public String decoder;
+
+    @Param({ "1", "10" })
+    public int items;
+
+    private byte[] envelope;
+    private MessageFactory messageFactory;
+    private Unmarshaller unmarshaller;
+
+    @Setup
+    public void setUp() throws SOAPException, JAXBException {
+        envelope = itemLookupResponse(items);
+        messageFactory = MessageFactory.newInstance();
+        unmarshaller = SoapCodec.getContext().createUnmarshaller();
+    }
+
+    /**
+     * Returns the SOAP envelope of a successful lookup of the given number of items.
+     */
+    static byte[] itemLookupResponse(final int count) throws JAXBException {
+        final Request request = new Request();
+        request.setIsValid("True");
+        final Items result = new Items();
+        result.setRequest(request);
+        for (int i = 0; i < count; i++) {
+            final ItemAttributes attributes = new ItemAttributes();
+            attributes.setTitle("Product Advertising API Client, Volume " + i);
+            attributes.setBrand("Freiberg");
+            attributes.setManufacturer("Freiberg Publishing");
+            attributes.setProductGroup("Book");
+            attributes.getFeature().add("Paperback, 320 pages");
+            attributes.getFeature().add("Language: English");
+            final Item item = new Item();
+            item.setASIN("B00000000" + i);
+            item.setDetailPageURL("https://www.amazon.de/dp/B00000000" + i + "?tag=freiberg-21&linkCode=xm2");
+            item.setSalesRank(Integer.toString(1000 + i));
+            item.setItemAttributes(attributes);
+            result.getItem().add(item);
+        }
+        final OperationRequest operationRequest = new OperationRequest();
+        operationRequest.setRequestId("0c7a5ec1-0d2a-4b6f-9b43-3e9f4c8b1a27");
+        operationRequest.setRequestProcessingTime(0.01f);
+        final ItemLookupResponse response = new ItemLookupResponse();
+        response.setOperationRequest(operationRequest);
+        response.getItems().add(result);
+        final Marshaller marshaller = SoapCodec.getContext().createMarshaller();
+        marshaller.setProperty(Marshaller.JAXB_FRAGMENT, true);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final String start = "<soapenv:Envelope xmlns:soapenv=\"http://schemas.xmlsoap.org/soap/envelope/\">"
+                + "<soapenv:Body>";
+        out.write(start.getBytes(StandardCharsets.UTF_8), 0, start.length());
+        marshaller.marshal(response, out);
+        final String end = "</soapenv:Body></soapenv:Envelope>";
+        out.write(end.getBytes(StandardCharsets.UTF_8), 0, end.length());
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public ItemLookupResponse decode() throws Exception {
+        if ("stax".equals(decoder)) {
+            try (TransportResponse response = new TransportResponse(200, "OK", new ByteArrayInputStream(envelope),
+                    () -> { })) {
+                return SoapCodec.decode(response, ItemLookupResponse.class);
+            }
+        }
+        return unmarshaller.unmarshal(messageFactory.createMessage(null, new ByteArrayInputStream(envelope))
+                .getSOAPBody().extractContentAsDocument(), ItemLookupResponse.class).getValue();
+    }
+}
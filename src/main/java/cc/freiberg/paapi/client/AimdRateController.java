@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Adjusts the rate of a {@link TokenBucket} to the throughput Amazon currently allows (AIMD). Each successful request
+ * raises the rate so that it grows by {@code increase} requests per second every second, a throttled request cuts it
+ * by the decrease factor. Requests which were already in flight when the rate was cut fail as well, so the rate is
+ * cut at most once per second.
+ */
+public class AimdRateController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AimdRateController.class);
+
+    public static final double DEFAULT_INCREASE = 0.1;
+    public static final double DEFAULT_DECREASE_FACTOR = 0.5;
+
+    private static final long DECREASE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final TokenBucket bucket;
+    private volatile boolean enabled;
+    private volatile double minRate;
+    private volatile double maxRate;
+    private volatile double increase = DEFAULT_INCREASE;
+    private volatile double decreaseFactor = DEFAULT_DECREASE_FACTOR;
+    private final AtomicLong lastDecrease;
+    private final Ticker ticker;
+
+    public AimdRateController(final TokenBucket bucket, final double minRate, final double maxRate) {
+        this(bucket, minRate, maxRate, Ticker.SYSTEM);
+    }
+
+    AimdRateController(final TokenBucket bucket, final double minRate, final double maxRate, final Ticker ticker) {
+        this.bucket = bucket;
+        this.ticker = ticker;
+        lastDecrease = new AtomicLong(ticker.read() - DECREASE_INTERVAL_NANOS);
+        setBounds(minRate, maxRate);
+    }
+
+    /**
+     * Raises the rate after a successful request.
+     */
+    public void onSuccess() {
+        if (!enabled) {
+            return;
+        }
+        final double rate = bucket.getRate();
+        if (rate < maxRate) {
+            bucket.setRate(Math.min(rate + increase / rate, maxRate));
+        }
+    }
+
+    /**
+     * Cuts the rate after a request was throttled.
+     */
+    public void onThrottled() {
+        if (!enabled) {
+            return;
+        }
+        final long now = ticker.read();
+        final long last = lastDecrease.get();
+        if (now - last < DECREASE_INTERVAL_NANOS || !lastDecrease.compareAndSet(last, now)) {
+            return;
+        }
+        final double rate = Math.max(bucket.getRate() * decreaseFactor, minRate);
+        bucket.setRate(rate);
+        LOG.debug("Request throttled, rate lowered to {} requests per second", rate);
+    }
+
+    /**
+     * Returns the currently allowed requests per second.
+     */
+    public double getRate() {
+        return bucket.getRate();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getMinRate() {
+        return minRate;
+    }
+
+    public double getMaxRate() {
+        return maxRate;
+    }
+
+    /**
+     * Sets the range the rate is kept in.
+     */
+    public void setBounds(final double minRate, final double maxRate) {
+        if (!(minRate > 0) || maxRate < minRate) {
+            throw new IllegalArgumentException("minRate must be positive and not greater than maxRate.");
+        }
+        this.minRate = minRate;
+        this.maxRate = maxRate;
+        bucket.setRate(Math.min(Math.max(bucket.getRate(), minRate), maxRate));
+    }
+
+    public double getIncrease() {
+        return increase;
+    }
+
+    /**
+     * Sets the requests per second the rate grows by every second while requests succeed.
+     */
+    public void setIncrease(final double increase) {
+        if (!(increase > 0)) {
+            throw new IllegalArgumentException("increase must be positive.");
+        }
+        this.increase = increase;
+    }
+
+    public double getDecreaseFactor() {
+        return decreaseFactor;
+    }
+
+    public void setDecreaseFactor(final double decreaseFactor) {
+        if (!(decreaseFactor > 0 && decreaseFactor < 1)) {
+            throw new IllegalArgumentException("decreaseFactor must be between 0 and 1.");
+        }
+        this.decreaseFactor = decreaseFactor;
+    }
+
+    @Override
+    public String toString() {
+        return "AimdRateController [enabled=" + enabled + ", rate=" + getRate() + ", minRate=" + minRate
+                + ", maxRate=" + maxRate + "]";
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+
+/**
+ * Default {@link PaapiAsyncTransport} backed by Apache HttpAsyncClient. Requests are multiplexed by a few I/O
+ * dispatcher threads over pooled keep-alive connections, no thread waits for a response. Responses are requested gzip
+ * or deflate compressed and buffered in memory before the future completes.
+ */
+public class AsyncHttpTransport implements PaapiAsyncTransport {
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT = 20;
+
+    private static final ContentType SOAP_CONTENT_TYPE = ContentType.create("text/xml", "UTF-8");
+
+    private final CloseableHttpAsyncClient httpClient;
+
+    private volatile RequestConfig requestConfig;
+
+    public AsyncHttpTransport() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT);
+    }
+
+    public AsyncHttpTransport(final int maxConnectionsPerEndpoint) {
+        if (maxConnectionsPerEndpoint < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerEndpoint must be at least 1.");
+        }
+        requestConfig = RequestConfig.custom().setConnectTimeout(10000).setSocketTimeout(30000).build();
+        final AtomicInteger threads = new AtomicInteger();
+        httpClient = HttpAsyncClients.custom()
+                .setMaxConnPerRoute(maxConnectionsPerEndpoint)
+                .setMaxConnTotal(maxConnectionsPerEndpoint * Marketplace.values().length)
+                .disableCookieManagement()
+                .setThreadFactory(r -> {
+                    final Thread thread = new Thread(r, "paapi-async-io-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                .build();
+        httpClient.start();
+    }
+
+    @Override
+    public CompletableFuture<TransportResponse> sendAsync(final String endpoint, final String soapAction,
+            final byte[] body, final int offset, final int length) {
+        final HttpPost post = new HttpPost(endpoint);
+        post.setConfig(PooledHttpTransport.withDeadline(requestConfig));
+        post.setHeader("SOAPAction", "\"" + soapAction + "\"");
+        post.setHeader("Accept-Encoding", "gzip, deflate");
+        post.setEntity(new ByteArrayEntity(body, offset, length, SOAP_CONTENT_TYPE));
+        final CompletableFuture<TransportResponse> result = new CompletableFuture<>();
+        final Future<HttpResponse> request = httpClient.execute(post, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(final HttpResponse response) {
+                try {
+                    result.complete(toTransportResponse(response));
+                } catch (final IOException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(final Exception e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                result.cancel(false);
+            }
+        });
+        // Aborts the request when the caller gives up on it
+        result.whenComplete((response, e) -> {
+            if (result.isCancelled()) {
+                request.cancel(true);
+            }
+        });
+        return result;
+    }
+
+    private static TransportResponse toTransportResponse(final HttpResponse response) throws IOException {
+        final HttpEntity entity = response.getEntity();
+        final Header contentEncoding = entity == null ? null : entity.getContentEncoding();
+        // The body is already buffered and the connection released
+        return new TransportResponse(response.getStatusLine().getStatusCode(),
+                response.getStatusLine().getReasonPhrase(),
+                entity == null ? null : entity.getContent(),
+                contentEncoding == null ? null : contentEncoding.getValue(),
+                () -> {
+                });
+    }
+
+    /**
+     * Sets the connect and socket (read) timeout for subsequent requests.
+     */
+    public void setTimeouts(final int connectTimeoutMillis, final int socketTimeoutMillis) {
+        requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setSocketTimeout(socketTimeoutMillis)
+                .build();
+    }
+
+    @Override
+    public void close() throws IOException {
+        httpClient.close();
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import javax.xml.ws.WebServiceException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ecs.client.jax.BrowseNode;
+import com.ecs.client.jax.BrowseNodeLookupRequest;
+import com.ecs.client.jax.BrowseNodes;
+
+/**
+ * Crawls browse node trees breadth first. The nodes of one level are looked up in lookups of ten by a bounded number of
+ * threads, all lookups go through the client and share its rate limit. Every node is looked up at most once.
+ */
+public class BrowseNodeCrawler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BrowseNodeCrawler.class);
+
+    public static final int DEFAULT_MAX_DEPTH = 10;
+    public static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+    /**
+     * The maximum number of browse node ids of one BrowseNodeLookup.
+     */
+    static final int MAX_BROWSE_NODE_IDS = 10;
+
+    private final PaapiClient client;
+    private volatile int maxDepth = DEFAULT_MAX_DEPTH;
+    private volatile int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+    private volatile boolean ancestors;
+
+    public BrowseNodeCrawler(final PaapiClient client) {
+        this.client = client;
+    }
+
+    public BrowseNodeTree crawl(final String... browseNodeIds) {
+        return crawl(Arrays.asList(browseNodeIds), null);
+    }
+
+    /**
+     * Crawls the trees below the browse nodes. The listener gets every node as soon as its children are known. It is
+     * called by the crawling threads, but never concurrently.
+     */
+    public BrowseNodeTree crawl(final Collection<String> browseNodeIds, final Consumer<BrowseNodeTree.Node> listener) {
+        final BrowseNodeTree tree = new BrowseNodeTree();
+        List<String> level = new ArrayList<>(new LinkedHashSet<>(browseNodeIds));
+        for (final String id : level) {
+            tree.add(id, null, 0);
+            tree.addRoot(id);
+        }
+        for (int depth = 0; !level.isEmpty(); depth++) {
+            final List<String> next = new ArrayList<>();
+            if (depth == 0 || depth < maxDepth) {
+                new Level(tree, depth, listener, next).crawl(level);
+            } else if (listener != null) {
+                // The nodes at the maximum depth are known from their parents and not expanded
+                level.forEach(id -> listener.accept(tree.getNode(id)));
+            }
+            LOG.debug("Crawled {} browse nodes at depth {}", level.size(), depth);
+            level = depth < maxDepth ? next : new ArrayList<>();
+        }
+        return tree;
+    }
+
+    /**
+     * Looks up the nodes of one level and adds their children to the tree.
+     */
+    private final class Level {
+
+        private final BrowseNodeTree tree;
+        private final int depth;
+        private final Consumer<BrowseNodeTree.Node> listener;
+        private final List<String> next;
+        // Guards the tree, the next level and the listener
+        private final ReentrantLock lock = new ReentrantLock();
+
+        Level(final BrowseNodeTree tree, final int depth, final Consumer<BrowseNodeTree.Node> listener,
+                final List<String> next) {
+            this.tree = tree;
+            this.depth = depth;
+            this.listener = listener;
+            this.next = next;
+        }
+
+        void crawl(final List<String> ids) {
+            final Queue<List<String>> chunks = new ConcurrentLinkedQueue<>();
+            for (int i = 0; i < ids.size(); i += MAX_BROWSE_NODE_IDS) {
+                chunks.add(ids.subList(i, Math.min(i + MAX_BROWSE_NODE_IDS, ids.size())));
+            }
+            final RequestPriority priority = RequestScheduler.getCurrentPriority();
+            final Deadline deadline = Deadline.current();
+            final ExecutorService executor = PaapiExecutors.newPerTaskExecutor("paapi-browse-node-crawler");
+            final List<Future<?>> workers = new ArrayList<>();
+            try {
+                for (int i = 0; i < Math.min(maxConcurrency, chunks.size()); i++) {
+                    workers.add(executor.submit(() -> Deadline.with(deadline,
+                            () -> RequestScheduler.withPriority(priority, () -> work(chunks)))));
+                }
+                for (final Future<?> worker : workers) {
+                    worker.get();
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new WebServiceException("Interrupted while crawling browse nodes", e);
+            } catch (final ExecutionException e) {
+                throw new WebServiceException("Crawling browse nodes failed", e.getCause());
+            } finally {
+                executor.shutdownNow();
+            }
+        }
+
+        private Void work(final Queue<List<String>> chunks) {
+            List<String> chunk;
+            while ((chunk = chunks.poll()) != null && !Thread.currentThread().isInterrupted()) {
+                final Map<String, BrowseNode> found = new LinkedHashMap<>();
+                final Map<String, BrowseNodeTree.Failure> failed = new LinkedHashMap<>();
+                lookup(chunk, found, failed);
+                lock.lock();
+                try {
+                    for (final String id : chunk) {
+                        expand(id, found.get(id), failed.get(id));
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return null;
+        }
+
+        private void lookup(final List<String> ids, final Map<String, BrowseNode> found,
+                final Map<String, BrowseNodeTree.Failure> failed) {
+            final BrowseNodeLookupRequest request = new BrowseNodeLookupRequest();
+            request.getBrowseNodeId().addAll(ids);
+            request.getResponseGroup().add("BrowseNodeInfo");
+            final List<BrowseNodes> result;
+            try {
+                result = client.browseNodeLookup(request);
+            } catch (final IllegalArgumentException e) {
+                if (ids.size() == 1) {
+                    LOG.warn("Lookup of browse node {} failed: {}", ids.get(0), e.getMessage());
+                    failed.put(ids.get(0), BrowseNodeTree.Failure.of(e));
+                    return;
+                }
+                // Find the rejected browse nodes
+                LOG.debug("Lookup of {} browse nodes rejected, splitting it: {}", ids.size(), e.getMessage());
+                lookup(ids.subList(0, ids.size() / 2), found, failed);
+                lookup(ids.subList(ids.size() / 2, ids.size()), found, failed);
+                return;
+            } catch (final RuntimeException e) {
+                LOG.warn("Lookup of browse nodes {} failed: {}", ids, e.getMessage());
+                ids.forEach(id -> failed.put(id, BrowseNodeTree.Failure.of(e)));
+                return;
+            }
+            for (final BrowseNodes browseNodes : result) {
+                for (final BrowseNode browseNode : browseNodes.getBrowseNode()) {
+                    if (ids.contains(browseNode.getBrowseNodeId())) {
+                        found.put(browseNode.getBrowseNodeId(), browseNode);
+                    }
+                }
+            }
+            for (final String id : ids) {
+                if (!found.containsKey(id)) {
+                    failed.put(id, new BrowseNodeTree.Failure(id + " was not returned", null));
+                }
+            }
+        }
+
+        private void expand(final String id, final BrowseNode browseNode, final BrowseNodeTree.Failure failure) {
+            final BrowseNodeTree.Node node = tree.getNode(id);
+            if (browseNode == null) {
+                tree.addFailure(id, failure);
+            } else {
+                if (node.getName() == null) {
+                    node.setName(browseNode.getName());
+                }
+                if (depth == 0 && ancestors) {
+                    addAncestors(browseNode);
+                }
+                if (depth < maxDepth) {
+                    node.setExpanded(true);
+                    final List<BrowseNode> children = browseNode.getChildren() == null ? Collections.emptyList()
+                            : browseNode.getChildren().getBrowseNode();
+                    for (final BrowseNode child : children) {
+                        node.addChild(child.getBrowseNodeId());
+                        if (!tree.contains(child.getBrowseNodeId())) {
+                            tree.add(child.getBrowseNodeId(), child.getName(), depth + 1);
+                            next.add(child.getBrowseNodeId());
+                        }
+                    }
+                }
+            }
+            if (listener != null) {
+                listener.accept(node);
+            }
+        }
+
+        private void addAncestors(final BrowseNode browseNode) {
+            BrowseNode child = browseNode;
+            for (int d = -1; child.getAncestors() != null && !child.getAncestors().getBrowseNode().isEmpty(); d--) {
+                final BrowseNode ancestor = child.getAncestors().getBrowseNode().get(0);
+                final boolean known = tree.contains(ancestor.getBrowseNodeId());
+                final BrowseNodeTree.Node node = tree.add(ancestor.getBrowseNodeId(), ancestor.getName(), d);
+                node.addChild(child.getBrowseNodeId());
+                tree.removeRoot(child.getBrowseNodeId());
+                if (known) {
+                    return;
+                }
+                tree.addRoot(ancestor.getBrowseNodeId());
+                if (listener != null) {
+                    listener.accept(node);
+                }
+                child = ancestor;
+            }
+        }
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * Sets the depth below the start nodes up to which children are looked up.
+     */
+    public void setMaxDepth(final int maxDepth) {
+        if (maxDepth < 0) {
+            throw new IllegalArgumentException("maxDepth must not be negative.");
+        }
+        this.maxDepth = maxDepth;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public void setMaxConcurrency(final int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency must be at least 1.");
+        }
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public boolean isAncestors() {
+        return ancestors;
+    }
+
+    /**
+     * Sets whether the ancestors of the start nodes are added to the tree. They are taken from the lookup of the start
+     * nodes, their other children are not crawled.
+     */
+    public void setAncestors(final boolean ancestors) {
+        this.ancestors = ancestors;
+    }
+}
@@ -33,7 +33,6 @@ import org.slf4j.LoggerFactory;
 import com.ecs.client.jax.AWSECommerceServicePortType;
 import com.ecs.client.jax.BrowseNodeLookupRequest;
 import com.ecs.client.jax.BrowseNodes;
-import com.ecs.client.jax.Errors;
 import com.ecs.client.jax.OperationRequest;
 
 public class BrowseNodeRequestHandler {
@@ -42,29 +41,42 @@ public class BrowseNodeRequestHandler {
     private final String marketplace;
     private final String accessKeyId;
     private final String tag;
-    private final AWSECommerceServicePortType port;
+    private final PortPool ports;
 
+    /**
+     * Creates a handler sending all requests through the given port, one at a time.
+     */
     public BrowseNodeRequestHandler(final String marketplace, final String accessKeyId, final String tag,
             final AWSECommerceServicePortType port) {
+        this(marketplace, accessKeyId, tag, new PortPool(marketplace, () -> port, 1));
+    }
+
+    BrowseNodeRequestHandler(final String marketplace, final String accessKeyId, final String tag,
+            final PortPool ports) {
         this.marketplace = marketplace;
         this.accessKeyId = accessKeyId;
         this.tag = tag;
-        this.port = port;
+        this.ports = ports;
     }
 
     List<BrowseNodes> browseNodeLookup(final BrowseNodeLookupRequest request, final PaapiParams params) {
         final List<BrowseNodeLookupRequest> requests = new ArrayList<>();
         final Holder<OperationRequest> operationRequest = new Holder<>();
         final Holder<List<BrowseNodes>> result = new Holder<>();
-        port.browseNodeLookup(marketplace,
-                accessKeyId,
-                tag,
-                params.getValidating(),
-                params.getEscaping(),
-                request,
-                requests,
-                operationRequest,
-                result);
+        final AWSECommerceServicePortType port = ports.borrow();
+        try {
+            port.browseNodeLookup(marketplace,
+                    accessKeyId,
+                    tag,
+                    params.getValidating(),
+                    params.getEscaping(),
+                    request,
+                    requests,
+                    operationRequest,
+                    result);
+        } finally {
+            ports.release(port);
+        }
         LOG.info("browseNodeLookup took {}", operationRequest.value.getRequestProcessingTime());
         if (params.isValidate()) {
             checkForErrors(result);
@@ -77,12 +89,8 @@ public class BrowseNodeRequestHandler {
                 && "True".equalsIgnoreCase(result.value.get(0).getRequest().getIsValid())) {
             return;
         }
-        final String errorMessage = result.value.stream().flatMap(i -> i.getRequest().getErrors().getError().stream())
-                .map(e -> makeString(e)).collect(Collectors.joining(System.lineSeparator()));
-        throw new IllegalArgumentException(errorMessage);
-    }
-
-    static String makeString(final Errors.Error error) {
-        return error.getCode() + ": " + error.getMessage();
+        throw ResponseErrors.toException(result.value.stream()
+                .flatMap(i -> i.getRequest().getErrors().getError().stream())
+                .collect(Collectors.toList()));
     }
 }
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Browse nodes found by a {@link BrowseNodeCrawler}, in the order they were found. Nodes only hold their id, name,
+ * depth and the ids of their children. A node with several parents appears once and is listed as child of each.
+ */
+public class BrowseNodeTree implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * A browse node. The depth of the start nodes is 0, the depth of their ancestors is negative.
+     */
+    public static class Node implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String id;
+        private String name;
+        private final int depth;
+        private final List<String> children = new ArrayList<>();
+        private boolean expanded;
+
+        Node(final String id, final String name, final int depth) {
+            this.id = id;
+            this.name = name;
+            this.depth = depth;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public List<String> getChildren() {
+            return Collections.unmodifiableList(children);
+        }
+
+        /**
+         * Returns whether the children of the node were looked up. Nodes at the maximum depth, nodes which failed and
+         * ancestors are not expanded, ancestors only list the child they were reached from.
+         */
+        public boolean isExpanded() {
+            return expanded;
+        }
+
+        void addChild(final String child) {
+            if (!children.contains(child)) {
+                children.add(child);
+            }
+        }
+
+        void setName(final String name) {
+            this.name = name;
+        }
+
+        void setExpanded(final boolean expanded) {
+            this.expanded = expanded;
+        }
+
+        @Override
+        public String toString() {
+            return "Node [id=" + id + ", name=" + name + ", depth=" + depth + ", children=" + children.size() + "]";
+        }
+    }
+
+    /**
+     * Why a browse node could not be looked up. Only the message and fault code of the exception are kept, so that the
+     * tree stays serializable.
+     */
+    public static class Failure implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String message;
+        private final String faultCode;
+
+        Failure(final String message, final String faultCode) {
+            this.message = message;
+            this.faultCode = faultCode;
+        }
+
+        static Failure of(final RuntimeException e) {
+            return new Failure(e.getMessage(), RetryEngine.getFaultCode(e));
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        /**
+         * Returns the local part of the SOAP fault code or {@code null} if the lookup did not fail with a SOAP fault.
+         */
+        public String getFaultCode() {
+            return faultCode;
+        }
+
+        @Override
+        public String toString() {
+            return "Failure [message=" + message + ", faultCode=" + faultCode + "]";
+        }
+    }
+
+    private final Map<String, Node> nodes = new LinkedHashMap<>();
+    private final List<String> roots = new ArrayList<>();
+    private final Map<String, Failure> failures = new LinkedHashMap<>();
+
+    public Node getNode(final String id) {
+        return nodes.get(id);
+    }
+
+    public Collection<Node> getNodes() {
+        return Collections.unmodifiableCollection(nodes.values());
+    }
+
+    /**
+     * Returns the nodes without parent in the tree: the start nodes or, when crawling ancestors, their topmost
+     * ancestors.
+     */
+    public List<Node> getRoots() {
+        final List<Node> result = new ArrayList<>(roots.size());
+        roots.forEach(id -> result.add(nodes.get(id)));
+        return result;
+    }
+
+    public Stream<Node> stream() {
+        return nodes.values().stream();
+    }
+
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Returns the browse nodes which could not be looked up by id.
+     */
+    public Map<String, Failure> getFailures() {
+        return Collections.unmodifiableMap(failures);
+    }
+
+    Node add(final String id, final String name, final int depth) {
+        return nodes.computeIfAbsent(id, i -> new Node(i, name, depth));
+    }
+
+    boolean contains(final String id) {
+        return nodes.containsKey(id);
+    }
+
+    void addRoot(final String id) {
+        if (!roots.contains(id)) {
+            roots.add(id);
+        }
+    }
+
+    void removeRoot(final String id) {
+        roots.remove(id);
+    }
+
+    void addFailure(final String id, final Failure failure) {
+        failures.put(id, failure);
+    }
+
+    @Override
+    public String toString() {
+        return "BrowseNodeTree [nodes=" + nodes.size() + ", roots=" + roots + ", failures=" + failures.size() + "]";
+    }
+}
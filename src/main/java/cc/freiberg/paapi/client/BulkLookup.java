@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import javax.xml.ws.WebServiceException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ecs.client.jax.Item;
+import com.ecs.client.jax.ItemLookupRequest;
+import com.ecs.client.jax.Items;
+
+/**
+ * Looks up any number of ASINs in lookups of ten. A bounded number of workers sends the lookups in parallel, each
+ * through the client so that the quota, retries and circuit breakers apply. If Amazon rejects a lookup it is split in
+ * halves until the rejected ASINs are found, so one invalid ASIN does not fail the other nine.
+ */
+class BulkLookup {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkLookup.class);
+
+    private final Function<ItemLookupRequest, List<Items>> lookup;
+    private final Collection<String> responseGroups;
+    private final Consumer<BulkLookupResult> callback;
+
+    private final Map<String, Item> items = new ConcurrentHashMap<>();
+    private final Map<String, RuntimeException> failures = new ConcurrentHashMap<>();
+
+    BulkLookup(final Function<ItemLookupRequest, List<Items>> lookup, final Collection<String> responseGroups,
+            final Consumer<BulkLookupResult> callback) {
+        this.lookup = lookup;
+        this.responseGroups = responseGroups;
+        this.callback = callback;
+    }
+
+    BulkLookupResult run(final Collection<String> asins, final int parallelism) {
+        final List<String> unique = new ArrayList<>(new LinkedHashSet<>(asins));
+        final Queue<List<String>> chunks = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < unique.size(); i += ItemLookupBatcher.MAX_BATCH_SIZE) {
+            chunks.add(unique.subList(i, Math.min(i + ItemLookupBatcher.MAX_BATCH_SIZE, unique.size())));
+        }
+        final RequestPriority priority = RequestScheduler.getCurrentPriority();
+        final Deadline deadline = Deadline.current();
+        final ExecutorService executor = PaapiExecutors.newPerTaskExecutor("paapi-bulk-lookup");
+        final List<Future<?>> workers = new ArrayList<>();
+        try {
+            for (int i = 0; i < Math.min(parallelism, chunks.size()); i++) {
+                workers.add(executor.submit(() -> Deadline.with(deadline,
+                        () -> RequestScheduler.withPriority(priority, () -> work(chunks)))));
+            }
+            for (final Future<?> worker : workers) {
+                worker.get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while looking up " + unique.size() + " ASINs", e);
+        } catch (final ExecutionException e) {
+            throw new WebServiceException("Bulk lookup failed", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        final Map<String, Item> orderedItems = new LinkedHashMap<>();
+        final Map<String, RuntimeException> orderedFailures = new LinkedHashMap<>();
+        for (final String asin : unique) {
+            if (items.containsKey(asin)) {
+                orderedItems.put(asin, items.get(asin));
+            } else if (failures.containsKey(asin)) {
+                orderedFailures.put(asin, failures.get(asin));
+            }
+        }
+        return new BulkLookupResult(orderedItems, orderedFailures);
+    }
+
+    private Void work(final Queue<List<String>> chunks) {
+        List<String> chunk;
+        while ((chunk = chunks.poll()) != null && !Thread.currentThread().isInterrupted()) {
+            final Map<String, Item> chunkItems = new LinkedHashMap<>();
+            final Map<String, RuntimeException> chunkFailures = new LinkedHashMap<>();
+            lookup(chunk, chunkItems, chunkFailures);
+            items.putAll(chunkItems);
+            failures.putAll(chunkFailures);
+            if (callback != null) {
+                callback.accept(new BulkLookupResult(chunkItems, chunkFailures));
+            }
+        }
+        return null;
+    }
+
+    private void lookup(final List<String> asins, final Map<String, Item> found,
+            final Map<String, RuntimeException> failed) {
+        final ItemLookupRequest request = new ItemLookupRequest();
+        request.getItemId().addAll(asins);
+        request.getResponseGroup().addAll(responseGroups);
+        final List<Items> result;
+        try {
+            result = lookup.apply(request);
+        } catch (final IllegalArgumentException e) {
+            if (asins.size() == 1) {
+                failed.put(asins.get(0), e);
+                return;
+            }
+            // Find the rejected ASINs
+            LOG.debug("Lookup of {} ASINs rejected, splitting it: {}", asins.size(), e.getMessage());
+            lookup(asins.subList(0, asins.size() / 2), found, failed);
+            lookup(asins.subList(asins.size() / 2, asins.size()), found, failed);
+            return;
+        } catch (final RuntimeException e) {
+            asins.forEach(asin -> failed.put(asin, e));
+            return;
+        }
+        for (final Items i : result) {
+            for (final Item item : i.getItem()) {
+                for (final String asin : asins) {
+                    if (asin.equalsIgnoreCase(item.getASIN())) {
+                        found.put(asin, item);
+                    }
+                }
+            }
+        }
+        for (final String asin : asins) {
+            if (!found.containsKey(asin)) {
+                failed.put(asin, new IllegalArgumentException(asin + " was not returned"));
+            }
+        }
+    }
+}
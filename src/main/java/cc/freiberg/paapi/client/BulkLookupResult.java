@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.ecs.client.jax.Item;
+
+/**
+ * Result of a bulk lookup: the items found by ASIN and the failures of the ASINs which could not be looked up.
+ */
+public class BulkLookupResult {
+
+    private final Map<String, Item> items;
+    private final Map<String, RuntimeException> failures;
+
+    public BulkLookupResult(final Map<String, Item> items, final Map<String, RuntimeException> failures) {
+        this.items = Collections.unmodifiableMap(new LinkedHashMap<>(items));
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+    }
+
+    public Map<String, Item> getItems() {
+        return items;
+    }
+
+    public Map<String, RuntimeException> getFailures() {
+        return failures;
+    }
+
+    @Override
+    public String toString() {
+        return "BulkLookupResult [items=" + items.size() + ", failures=" + failures.size() + "]";
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import javax.xml.ws.WebServiceException;
+
+/**
+ * Isolates a family of operations from the others. Each bulkhead has its own limit of concurrent requests and its own
+ * bounded queue of waiting requests, so a burst of one family cannot hold up another. A bulkhead can also send its
+ * requests with a {@link RequestPriority} of its own, which gives the family precedence for the request quota.
+ */
+public class Bulkhead {
+
+    public static final int DEFAULT_MAX_QUEUED = 100;
+
+    private final String name;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private int active;
+    private int queued;
+    private int maxConcurrent;
+    private int maxQueued;
+
+    private volatile RequestPriority priority;
+    private final LongAdder rejected = new LongAdder();
+
+    public Bulkhead(final String name, final int maxConcurrent, final int maxQueued) {
+        this.name = name;
+        setLimits(maxConcurrent, maxQueued);
+    }
+
+    /**
+     * Runs the call once a slot is free. Fails with a {@link BulkheadFullException} if the queue is full.
+     */
+    <T> T call(final Supplier<T> call) {
+        acquire();
+        try {
+            final RequestPriority p = priority;
+            return p == null || RequestScheduler.isPrioritySet() ? call.get() : RequestScheduler.withPriority(p, call);
+        } finally {
+            release();
+        }
+    }
+
+    private void acquire() {
+        lock.lock();
+        try {
+            if (active < maxConcurrent) {
+                active++;
+                return;
+            }
+            if (queued >= maxQueued) {
+                rejected.increment();
+                throw new BulkheadFullException(name);
+            }
+            queued++;
+            try {
+                long remaining = Deadline.remainingNanos();
+                while (active >= maxConcurrent) {
+                    if (remaining <= 0) {
+                        throw new DeadlineExceededException("Deadline exceeded in bulkhead " + name);
+                    }
+                    remaining = released.awaitNanos(remaining);
+                }
+                active++;
+            } finally {
+                queued--;
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while waiting in bulkhead " + name, e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release() {
+        lock.lock();
+        try {
+            active--;
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Sets the number of concurrent requests and the number of requests waiting for a slot.
+     */
+    public void setLimits(final int maxConcurrent, final int maxQueued) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("maxConcurrent must be at least 1.");
+        }
+        if (maxQueued < 0) {
+            throw new IllegalArgumentException("maxQueued must not be negative.");
+        }
+        lock.lock();
+        try {
+            this.maxConcurrent = maxConcurrent;
+            this.maxQueued = maxQueued;
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxConcurrent() {
+        lock.lock();
+        try {
+            return maxConcurrent;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxQueued() {
+        lock.lock();
+        try {
+            return maxQueued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    /**
+     * Sets the priority of the requests of this bulkhead whose caller did not choose one, {@code null} sends them with
+     * the default priority.
+     */
+    public void setPriority(final RequestPriority priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * Returns the number of requests currently running.
+     */
+    public int getActive() {
+        lock.lock();
+        try {
+            return active;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests currently waiting for a slot.
+     */
+    public int getQueued() {
+        lock.lock();
+        try {
+            return queued;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests rejected because the queue was full.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Bulkhead [name=" + name + ", active=" + getActive() + ", queued=" + getQueued() + ", rejected="
+                + getRejected() + "]";
+    }
+}
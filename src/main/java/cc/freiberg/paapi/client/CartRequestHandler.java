@@ -37,7 +37,6 @@ import com.ecs.client.jax.CartClearRequest;
 import com.ecs.client.jax.CartCreateRequest;
 import com.ecs.client.jax.CartGetRequest;
 import com.ecs.client.jax.CartModifyRequest;
-import com.ecs.client.jax.Errors;
 import com.ecs.client.jax.OperationRequest;
 
 public class CartRequestHandler {
@@ -46,29 +45,41 @@ public class CartRequestHandler {
     private final String marketplace;
     private final String accessKeyId;
     private final String tag;
-    private final AWSECommerceServicePortType port;
+    private final PortPool ports;
 
+    /**
+     * Creates a handler sending all requests through the given port, one at a time.
+     */
     public CartRequestHandler(final String marketplace, final String accessKeyId, final String tag,
             final AWSECommerceServicePortType port) {
+        this(marketplace, accessKeyId, tag, new PortPool(marketplace, () -> port, 1));
+    }
+
+    CartRequestHandler(final String marketplace, final String accessKeyId, final String tag, final PortPool ports) {
         this.marketplace = marketplace;
         this.accessKeyId = accessKeyId;
         this.tag = tag;
-        this.port = port;
+        this.ports = ports;
     }
 
     List<Cart> cartCreate(final CartCreateRequest request, final PaapiParams params) {
         final List<CartCreateRequest> requests = new ArrayList<>();
         final Holder<OperationRequest> operationRequest = new Holder<>();
         final Holder<List<Cart>> result = new Holder<>();
-        port.cartCreate(marketplace,
-                accessKeyId,
-                tag,
-                params.getValidating(),
-                params.getEscaping(),
-                request,
-                requests,
-                operationRequest,
-                result);
+        final AWSECommerceServicePortType port = ports.borrow();
+        try {
+            port.cartCreate(marketplace,
+                    accessKeyId,
+                    tag,
+                    params.getValidating(),
+                    params.getEscaping(),
+                    request,
+                    requests,
+                    operationRequest,
+                    result);
+        } finally {
+            ports.release(port);
+        }
         LOG.info("cartCreate took {}", operationRequest.value.getRequestProcessingTime());
         if (params.isValidate()) {
             checkForErrors(result);
@@ -80,15 +91,20 @@ public class CartRequestHandler {
         final List<CartAddRequest> requests = new ArrayList<>();
         final Holder<OperationRequest> operationRequest = new Holder<>();
         final Holder<List<Cart>> result = new Holder<>();
-        port.cartAdd(marketplace,
-                accessKeyId,
-                tag,
-                params.getValidating(),
-                params.getEscaping(),
-                request,
-                requests,
-                operationRequest,
-                result);
+        final AWSECommerceServicePortType port = ports.borrow();
+        try {
+            port.cartAdd(marketplace,
+                    accessKeyId,
+                    tag,
+                    params.getValidating(),
+                    params.getEscaping(),
+                    request,
+                    requests,
+                    operationRequest,
+                    result);
+        } finally {
+            ports.release(port);
+        }
         LOG.info("cartAdd took {}", operationRequest.value.getRequestProcessingTime());
         if (params.isValidate()) {
             checkForErrors(result);
@@ -100,15 +116,20 @@ public class CartRequestHandler {
         final List<CartClearRequest> requests = new ArrayList<>();
         final Holder<OperationRequest> operationRequest = new Holder<>();
         final Holder<List<Cart>> result = new Holder<>();
-        port.cartClear(marketplace,
-                accessKeyId,
-                tag,
-                params.getValidating(),
-                params.getEscaping(),
-                request,
-                requests,
-                operationRequest,
-                result);
+        final AWSECommerceServicePortType port = ports.borrow();
+        try {
+            port.cartClear(marketplace,
+                    accessKeyId,
+                    tag,
+                    params.getValidating(),
+                    params.getEscaping(),
+                    request,
+                    requests,
+                    operationRequest,
+                    result);
+        } finally {
+            ports.release(port);
+        }
         LOG.info("cartAdd took {}", operationRequest.value.getRequestProcessingTime());
         if (params.isValidate()) {
             checkForErrors(result);
@@ -120,15 +141,20 @@ public class CartRequestHandler {
         final List<CartGetRequest> requests = new ArrayList<>();
         final Holder<OperationRequest> operationRequest = new Holder<>();
         final Holder<List<Cart>> result = new Holder<>();
-        port.cartGet(marketplace,
-                accessKeyId,
-                tag,
-                params.getValidating(),
-                params.getEscaping(),
-                request,
-                requests,
-                operationRequest,
-                result);
+        final AWSECommerceServicePortType port = ports.borrow();
+        try {
+            port.cartGet(marketplace,
+                    accessKeyId,
+                    tag,
+                    params.getValidating(),
+                    params.getEscaping(),
+                    request,
+                    requests,
+                    operationRequest,
+                    result);
+        } finally {
+            ports.release(port);
+        }
         LOG.info("cartGet took {}", operationRequest.value.getRequestProcessingTime());
         if (params.isValidate()) {
             checkForErrors(result);
@@ -140,15 +166,20 @@ public class CartRequestHandler {
         final List<CartModifyRequest> requests = new ArrayList<>();
         final Holder<OperationRequest> operationRequest = new Holder<>();
         final Holder<List<Cart>> result = new Holder<>();
-        port.cartModify(marketplace,
-                accessKeyId,
-                tag,
-                params.getValidating(),
-                params.getEscaping(),
-                request,
-                requests,
-                operationRequest,
-                result);
+        final AWSECommerceServicePortType port = ports.borrow();
+        try {
+            port.cartModify(marketplace,
+                    accessKeyId,
+                    tag,
+                    params.getValidating(),
+                    params.getEscaping(),
+                    request,
+                    requests,
+                    operationRequest,
+                    result);
+        } finally {
+            ports.release(port);
+        }
         LOG.info("cartModify took {}", operationRequest.value.getRequestProcessingTime());
         if (params.isValidate()) {
             checkForErrors(result);
@@ -160,15 +191,20 @@ public class CartRequestHandler {
         final List<CartClearRequest> requests = new ArrayList<>();
         final Holder<OperationRequest> operationRequest = new Holder<>();
         final Holder<List<Cart>> result = new Holder<>();
-        port.cartClear(marketplace,
-                accessKeyId,
-                tag,
-                params.getValidating(),
-                params.getEscaping(),
-                request,
-                requests,
-                operationRequest,
-                result);
+        final AWSECommerceServicePortType port = ports.borrow();
+        try {
+            port.cartClear(marketplace,
+                    accessKeyId,
+                    tag,
+                    params.getValidating(),
+                    params.getEscaping(),
+                    request,
+                    requests,
+                    operationRequest,
+                    result);
+        } finally {
+            ports.release(port);
+        }
         LOG.info("cartModify took {}", operationRequest.value.getRequestProcessingTime());
         if (params.isValidate()) {
             checkForErrors(result);
@@ -181,13 +217,9 @@ public class CartRequestHandler {
                 && "True".equalsIgnoreCase(result.value.get(0).getRequest().getIsValid())) {
             return;
         }
-        final String errorMessage = result.value.stream().flatMap(i -> i.getRequest().getErrors().getError().stream())
-                .map(e -> makeString(e)).collect(Collectors.joining(System.lineSeparator()));
-        throw new IllegalArgumentException(errorMessage);
-    }
-
-    static String makeString(final Errors.Error error) {
-        return error.getCode() + ": " + error.getMessage();
+        throw ResponseErrors.toException(result.value.stream()
+                .flatMap(i -> i.getRequest().getErrors().getError().stream())
+                .collect(Collectors.toList()));
     }
 
 }
@@ -0,0 +1,338 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker for one operation of one marketplace. After a number of consecutive failures the breaker opens and
+ * calls fail immediately with a {@link CircuitBreakerOpenException}. When the open time has passed a limited number of
+ * probe calls is let through: if they succeed the breaker closes, otherwise it opens again. Only failures which signal
+ * an unavailable service count, a rejected request means the service is up. Failures raised by the client itself,
+ * like a passed deadline, and rejected requests do not count either way.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public static final int DEFAULT_FAILURE_THRESHOLD = 5;
+    public static final long DEFAULT_OPEN_MILLIS = 30000;
+    public static final int DEFAULT_HALF_OPEN_PROBES = 1;
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Notified about state transitions.
+     */
+    @FunctionalInterface
+    public interface Listener {
+        void onStateChange(CircuitBreaker circuitBreaker, State from, State to);
+    }
+
+    private final String name;
+    private final Ticker ticker;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+    private int probes;
+    private long halfOpenGeneration;
+
+    private volatile int failureThreshold = DEFAULT_FAILURE_THRESHOLD;
+    private volatile long openNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_OPEN_MILLIS);
+    private volatile int halfOpenProbes = DEFAULT_HALF_OPEN_PROBES;
+
+    private final Map<State, LongAdder> transitions = new EnumMap<>(State.class);
+    private final LongAdder rejected = new LongAdder();
+
+    public CircuitBreaker(final String name) {
+        this(name, Ticker.SYSTEM);
+    }
+
+    CircuitBreaker(final String name, final Ticker ticker) {
+        this.name = name;
+        this.ticker = ticker;
+        for (final State s : State.values()) {
+            transitions.put(s, new LongAdder());
+        }
+    }
+
+    /**
+     * Runs the call if the breaker lets it through and records its outcome.
+     */
+    <T> T call(final WebServiceWrapper<T> call) {
+        final long probe = acquire();
+        final T result;
+        try {
+            result = call.call();
+        } catch (final RuntimeException | Error e) {
+            record(probe, e);
+            throw e;
+        }
+        record(probe, null);
+        return result;
+    }
+
+    /**
+     * Starts the asynchronous call if the breaker lets it through and records its outcome once it completed.
+     * Cancelling the returned future cancels the call.
+     */
+    <T> CompletableFuture<T> callAsync(final Supplier<CompletableFuture<T>> call) {
+        final long probe;
+        final CompletableFuture<T> started;
+        try {
+            probe = acquire();
+        } catch (final CircuitBreakerOpenException e) {
+            final CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        try {
+            started = call.get();
+        } catch (final RuntimeException | Error e) {
+            record(probe, e);
+            throw e;
+        }
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        result.whenComplete((value, failure) -> started.cancel(true));
+        started.whenComplete((value, failure) -> {
+            final Throwable cause = RetryEngine.unwrap(failure);
+            record(probe, cause);
+            if (cause == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(cause);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Records the outcome of a call, {@code null} if it succeeded. A call without an outcome frees its probe slot.
+     */
+    private void record(final long probe, final Throwable failure) {
+        if (failure == null) {
+            onSuccess();
+        } else if (failure instanceof RuntimeException && RetryEngine.isRetryable((RuntimeException) failure)) {
+            onFailure();
+        } else if (failure instanceof RuntimeException && !isNeutral((RuntimeException) failure)) {
+            onSuccess();
+        } else if (probe >= 0) {
+            releaseProbe(probe);
+        }
+    }
+
+    /**
+     * Returns whether the failure tells nothing about the service: it was raised locally or Amazon rejected the
+     * request as invalid.
+     */
+    private static boolean isNeutral(final RuntimeException e) {
+        return RetryEngine.isCallerLocal(e) || e instanceof IllegalArgumentException;
+    }
+
+    /**
+     * Lets the call through or throws a {@link CircuitBreakerOpenException}. Returns the half open period the call is
+     * a probe of, or -1 if it is no probe.
+     */
+    private long acquire() {
+        State from = null;
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                if (ticker.read() - openedAt < openNanos) {
+                    rejected.increment();
+                    throw new CircuitBreakerOpenException(name);
+                }
+                from = transition(State.HALF_OPEN);
+                probes = 0;
+                halfOpenGeneration++;
+            }
+            if (state == State.HALF_OPEN) {
+                if (probes >= halfOpenProbes) {
+                    rejected.increment();
+                    throw new CircuitBreakerOpenException(name);
+                }
+                probes++;
+                return halfOpenGeneration;
+            }
+            return -1;
+        } finally {
+            lock.unlock();
+            fire(from, State.HALF_OPEN);
+        }
+    }
+
+    /**
+     * Frees the slot of a probe which ended without an outcome, so that another call can probe.
+     */
+    private void releaseProbe(final long generation) {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN && halfOpenGeneration == generation && probes > 0) {
+                probes--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void onSuccess() {
+        State from = null;
+        lock.lock();
+        try {
+            failures = 0;
+            if (state == State.HALF_OPEN) {
+                from = transition(State.CLOSED);
+            }
+        } finally {
+            lock.unlock();
+        }
+        fire(from, State.CLOSED);
+    }
+
+    private void onFailure() {
+        State from = null;
+        lock.lock();
+        try {
+            failures++;
+            if (state == State.HALF_OPEN || state == State.CLOSED && failures >= failureThreshold) {
+                from = transition(State.OPEN);
+                openedAt = ticker.read();
+            }
+        } finally {
+            lock.unlock();
+        }
+        fire(from, State.OPEN);
+    }
+
+    private State transition(final State to) {
+        final State from = state;
+        state = to;
+        transitions.get(to).increment();
+        return from;
+    }
+
+    private void fire(final State from, final State to) {
+        if (from == null) {
+            return;
+        }
+        LOG.info("Circuit breaker {} changed from {} to {}", name, from, to);
+        for (final Listener listener : listeners) {
+            try {
+                listener.onStateChange(this, from, to);
+            } catch (final RuntimeException e) {
+                LOG.warn("Circuit breaker listener failed", e);
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void addListener(final Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(final Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the number of transitions into the given state.
+     */
+    public long getTransitions(final State to) {
+        return transitions.get(to).sum();
+    }
+
+    /**
+     * Returns the number of calls failed fast while the breaker was open.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    public void setFailureThreshold(final int failureThreshold) {
+        if (failureThreshold < 1) {
+            throw new IllegalArgumentException("failureThreshold must be at least 1.");
+        }
+        this.failureThreshold = failureThreshold;
+    }
+
+    public long getOpenMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(openNanos);
+    }
+
+    /**
+     * Sets how long the breaker stays open before probe calls are let through.
+     */
+    public void setOpenMillis(final long openMillis) {
+        if (openMillis < 0) {
+            throw new IllegalArgumentException("openMillis must not be negative.");
+        }
+        openNanos = TimeUnit.MILLISECONDS.toNanos(openMillis);
+    }
+
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+
+    public void setHalfOpenProbes(final int halfOpenProbes) {
+        if (halfOpenProbes < 1) {
+            throw new IllegalArgumentException("halfOpenProbes must be at least 1.");
+        }
+        this.halfOpenProbes = halfOpenProbes;
+    }
+
+    @Override
+    public String toString() {
+        return "CircuitBreaker [name=" + name + ", state=" + getState() + ", rejected=" + getRejected() + "]";
+    }
+}
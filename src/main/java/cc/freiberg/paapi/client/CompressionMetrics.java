@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Response sizes per operation, as transferred over the wire and after decompression.
+ */
+public class CompressionMetrics {
+
+    private final Map<String, Counters> counters = new ConcurrentHashMap<>();
+
+    void record(final String operation, final long compressedBytes, final long uncompressedBytes) {
+        final Counters c = counters.computeIfAbsent(operation, o -> new Counters());
+        c.responses.increment();
+        c.compressedBytes.add(compressedBytes);
+        c.uncompressedBytes.add(uncompressedBytes);
+    }
+
+    /**
+     * Returns the operations with recorded responses.
+     */
+    public Set<String> getOperations() {
+        return Collections.unmodifiableSet(counters.keySet());
+    }
+
+    public long getResponses(final String operation) {
+        final Counters c = counters.get(operation);
+        return c == null ? 0 : c.responses.sum();
+    }
+
+    /**
+     * Returns the number of response bytes received over the wire for the given operation.
+     */
+    public long getCompressedBytes(final String operation) {
+        final Counters c = counters.get(operation);
+        return c == null ? 0 : c.compressedBytes.sum();
+    }
+
+    /**
+     * Returns the number of response bytes after decompression for the given operation.
+     */
+    public long getUncompressedBytes(final String operation) {
+        final Counters c = counters.get(operation);
+        return c == null ? 0 : c.uncompressedBytes.sum();
+    }
+
+    @Override
+    public String toString() {
+        final StringJoiner joiner = new StringJoiner(", ", "CompressionMetrics [", "]");
+        counters.forEach((operation, c) -> joiner
+                .add(operation + "=" + c.compressedBytes.sum() + "/" + c.uncompressedBytes.sum() + " bytes"));
+        return joiner.toString();
+    }
+
+    private static class Counters {
+        private final LongAdder responses = new LongAdder();
+        private final LongAdder compressedBytes = new LongAdder();
+        private final LongAdder uncompressedBytes = new LongAdder();
+    }
+}
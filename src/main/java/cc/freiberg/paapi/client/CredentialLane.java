@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Everything bound to one set of credentials: the ports signing with its secret key, the handlers sending its access
+ * key and the rate limiter enforcing its quota.
+ */
+class CredentialLane {
+
+    private static final long INITIAL_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long MAX_COOLDOWN_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final PaapiCredentials credentials;
+    private final PortPool portPool;
+    private final PortPool cartPortPool;
+    private final ItemRequestHandler itemHandler;
+    private final BrowseNodeRequestHandler browseNodeHandler;
+    private final CartRequestHandler cartHandler;
+
+    private final TokenBucket rateLimiter;
+    private final AimdRateController rateController;
+    // Guards updates of the cooldown, reads of throttledUntil need no lock
+    private final ReentrantLock cooldownLock = new ReentrantLock();
+    private volatile long throttledUntil;
+    private volatile long cooldownNanos;
+
+    CredentialLane(final PaapiCredentials credentials, final PortPool portPool, final PortPool cartPortPool) {
+        this.credentials = credentials;
+        this.portPool = portPool;
+        this.cartPortPool = cartPortPool;
+        itemHandler = new ItemRequestHandler(null, credentials.getAccessKeyId(), credentials.getTag(), portPool);
+        browseNodeHandler = new BrowseNodeRequestHandler(null, credentials.getAccessKeyId(), credentials.getTag(),
+                portPool);
+        // Cart operations have ports of their own, so catalog traffic cannot hold them up
+        cartHandler = new CartRequestHandler(null, credentials.getAccessKeyId(), credentials.getTag(), cartPortPool);
+        rateLimiter = new TokenBucket(credentials.getRequestsPerSecond(), credentials.getBurst());
+        // The granted quota is the ceiling until configured otherwise
+        rateController = new AimdRateController(rateLimiter, credentials.getRequestsPerSecond() / 10,
+                credentials.getRequestsPerSecond());
+    }
+
+    PaapiCredentials getCredentials() {
+        return credentials;
+    }
+
+    PortPool getPortPool() {
+        return portPool;
+    }
+
+    PortPool getCartPortPool() {
+        return cartPortPool;
+    }
+
+    ItemRequestHandler getItemHandler() {
+        return itemHandler;
+    }
+
+    BrowseNodeRequestHandler getBrowseNodeHandler() {
+        return browseNodeHandler;
+    }
+
+    CartRequestHandler getCartHandler() {
+        return cartHandler;
+    }
+
+    TokenBucket getRateLimiter() {
+        return rateLimiter;
+    }
+
+    AimdRateController getRateController() {
+        return rateController;
+    }
+
+    /**
+     * Returns the number of requests which can be sent right now without exceeding the quota, negative if the quota is
+     * already used up.
+     */
+    double getBudget() {
+        return rateLimiter.getAvailablePermits();
+    }
+
+    boolean isThrottled(final long now) {
+        return now - throttledUntil < 0;
+    }
+
+    long getThrottledUntil() {
+        return throttledUntil;
+    }
+
+    void recordSuccess() {
+        rateController.onSuccess();
+        if (cooldownNanos != 0) {
+            cooldownLock.lock();
+            try {
+                cooldownNanos = 0;
+            } finally {
+                cooldownLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Moves traffic away from this key for a while. The cooldown doubles while the key keeps being throttled.
+     */
+    void recordThrottled(final long now) {
+        rateController.onThrottled();
+        cooldownLock.lock();
+        try {
+            final long cooldown = cooldownNanos == 0 ? INITIAL_COOLDOWN_NANOS
+                    : Math.min(cooldownNanos * 2, MAX_COOLDOWN_NANOS);
+            cooldownNanos = cooldown;
+            // Concurrent throttles must not shorten a longer cooldown
+            if (now + cooldown - throttledUntil > 0) {
+                throttledUntil = now + cooldown;
+            }
+        } finally {
+            cooldownLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Spreads requests over several credentials. Each call is routed to the credentials with the most budget left, keys
+ * which were recently throttled are only used if all keys are throttled. Before the request is sent a permit is taken
+ * from the rate limiter of the key, either waiting for it or failing fast with a {@link RateLimitExceededException}.
+ * Which request gets the next permit is decided by the {@link RequestScheduler}. Requests which cannot get a permit
+ * before their {@link Deadline} are dropped without taking one.
+ */
+class CredentialPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CredentialPool.class);
+
+    private final List<CredentialLane> lanes;
+    private final RequestScheduler scheduler = new RequestScheduler();
+    private volatile boolean blocking = true;
+    private final LongAdder shed = new LongAdder();
+
+    CredentialPool(final List<CredentialLane> lanes) {
+        if (lanes.isEmpty()) {
+            throw new IllegalArgumentException("At least one set of credentials is required.");
+        }
+        this.lanes = Collections.unmodifiableList(new ArrayList<>(lanes));
+    }
+
+    List<CredentialLane> getLanes() {
+        return lanes;
+    }
+
+    /**
+     * Runs the call with the credentials that currently have the most budget left.
+     */
+    <T> T call(final Function<CredentialLane, T> call) {
+        try {
+            return send(call);
+        } catch (final DeadlineExceededException e) {
+            shed.increment();
+            throw e;
+        }
+    }
+
+    private <T> T send(final Function<CredentialLane, T> call) {
+        Deadline.check("before sending the request");
+        final CredentialLane lane;
+        scheduler.enter();
+        try {
+            lane = select(System.nanoTime());
+            acquire(lane);
+        } finally {
+            scheduler.leave();
+        }
+        try {
+            final T result = call.apply(lane);
+            lane.recordSuccess();
+            return result;
+        } catch (final RuntimeException e) {
+            if (isThrottled(e)) {
+                lane.recordThrottled(System.nanoTime());
+                LOG.info("Access key {} is throttled, moving traffic to other keys",
+                        lane.getCredentials().getAccessKeyId());
+            }
+            throw e;
+        }
+    }
+
+    private void acquire(final CredentialLane lane) {
+        final long remaining = Deadline.remainingNanos();
+        if (!blocking) {
+            if (!lane.getRateLimiter().tryAcquire()) {
+                throw new RateLimitExceededException(
+                        "Request quota of access key " + lane.getCredentials().getAccessKeyId() + " exceeded");
+            }
+        } else if (remaining == Long.MAX_VALUE) {
+            lane.getRateLimiter().acquire();
+        } else if (!lane.getRateLimiter().tryAcquire(remaining, TimeUnit.NANOSECONDS)) {
+            // Do not take a permit which could only be used after the deadline
+            throw new DeadlineExceededException("Deadline exceeded before a permit of access key "
+                    + lane.getCredentials().getAccessKeyId() + " is available");
+        }
+    }
+
+    CredentialLane select(final long now) {
+        CredentialLane best = null;
+        for (final CredentialLane lane : lanes) {
+            if (!lane.isThrottled(now) && (best == null || lane.getBudget() > best.getBudget())) {
+                best = lane;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        // All keys are throttled, use the one which recovers first
+        for (final CredentialLane lane : lanes) {
+            if (best == null || lane.getThrottledUntil() - best.getThrottledUntil() < 0) {
+                best = lane;
+            }
+        }
+        LOG.debug("All access keys are throttled, using {} for another {} ms", best.getCredentials().getAccessKeyId(),
+                TimeUnit.NANOSECONDS.toMillis(best.getThrottledUntil() - now));
+        return best;
+    }
+
+    RequestScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Returns the number of requests dropped because their deadline could not be met.
+     */
+    long getShed() {
+        return shed.sum();
+    }
+
+    boolean isBlocking() {
+        return blocking;
+    }
+
+    void setBlocking(final boolean blocking) {
+        this.blocking = blocking;
+    }
+
+    /**
+     * Returns whether the exception signals that the quota of the access key is exceeded.
+     */
+    static boolean isThrottled(final RuntimeException e) {
+        if (RetryEngine.getStatusCode(e) == 503) {
+            return true;
+        }
+        final String faultCode = RetryEngine.getFaultCode(e);
+        if (faultCode != null) {
+            return faultCode.endsWith("RequestThrottled");
+        }
+        // Errors in the response are reported with their code in the message
+        return e.getMessage() != null && e.getMessage().contains("RequestThrottled");
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Point in time by which the requests of a call must be answered. The deadline applies to all requests sent from the
+ * current thread within {@link #withTimeout(long, TimeUnit, Supplier)}: waiting in the queue, for a permit of the rate
+ * limiter or a port, between retries and for the response. Requests which cannot be answered in time are dropped
+ * with a {@link DeadlineExceededException} before they use up quota.
+ */
+public final class Deadline {
+
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final long deadlineNanos;
+
+    private Deadline(final long deadlineNanos) {
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    /**
+     * Runs the call with the given time budget. A deadline of an enclosing call is kept if it is earlier.
+     */
+    public static <T> T withTimeout(final long timeout, final TimeUnit unit, final Supplier<T> call) {
+        final Deadline current = CURRENT.get();
+        final Deadline deadline = new Deadline(System.nanoTime() + unit.toNanos(timeout));
+        return with(current != null && current.deadlineNanos - deadline.deadlineNanos < 0 ? current : deadline, call);
+    }
+
+    /**
+     * Runs the call with the given deadline, e.g. one taken over from another thread. {@code null} runs it without a
+     * deadline.
+     */
+    static <T> T with(final Deadline deadline, final Supplier<T> call) {
+        final Deadline previous = CURRENT.get();
+        CURRENT.set(deadline);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Returns the deadline of the current thread or {@code null} if it has none.
+     */
+    public static Deadline current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Returns the time left until the deadline of the current thread, {@link Long#MAX_VALUE} if it has none.
+     */
+    static long remainingNanos() {
+        final Deadline deadline = CURRENT.get();
+        return deadline == null ? Long.MAX_VALUE : deadline.getRemainingNanos();
+    }
+
+    /**
+     * Throws a {@link DeadlineExceededException} if the deadline of the current thread has passed.
+     */
+    static void check(final String what) throws DeadlineExceededException {
+        if (remainingNanos() <= 0) {
+            throw new DeadlineExceededException("Deadline exceeded " + what);
+        }
+    }
+
+    public long getRemainingNanos() {
+        return deadlineNanos - System.nanoTime();
+    }
+
+    public long getRemainingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(getRemainingNanos());
+    }
+
+    public boolean isExpired() {
+        return getRemainingNanos() <= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "Deadline [remainingMillis=" + getRemainingMillis() + "]";
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Growable byte buffer the SOAP envelope of a request is written into. Buffers are pooled and reused by later
+ * requests.
+ */
+final class EnvelopeBuffer extends OutputStream {
+
+    private static final int INITIAL_CAPACITY = 4096;
+    // Larger buffers are not kept after use
+    private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ObjectPool<EnvelopeBuffer> BUFFERS = new ObjectPool<>(EnvelopeBuffer::new);
+
+    private byte[] buf = new byte[INITIAL_CAPACITY];
+    private int count;
+
+    /**
+     * Returns an empty buffer from the pool. It must be given back with {@link #release()} once its content was sent.
+     */
+    static EnvelopeBuffer get() {
+        final EnvelopeBuffer buffer = BUFFERS.borrow();
+        buffer.count = 0;
+        return buffer;
+    }
+
+    /**
+     * Gives the buffer back to the pool.
+     */
+    void release() {
+        if (buf.length <= MAX_RETAINED_CAPACITY) {
+            BUFFERS.release(this);
+        }
+    }
+
+    byte[] array() {
+        return buf;
+    }
+
+    int size() {
+        return count;
+    }
+
+    /**
+     * Drops everything after the given position.
+     */
+    void truncate(final int size) {
+        count = size;
+    }
+
+    @Override
+    public void write(final int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    @Override
+    public void write(final byte[] b) {
+        write(b, 0, b.length);
+    }
+
+    /**
+     * Writes a string which is known to contain only ASCII characters without markup, e.g. a timestamp.
+     */
+    void writeAscii(final String s) {
+        final int length = s.length();
+        ensureCapacity(count + length);
+        for (int i = 0; i < length; i++) {
+            buf[count++] = (byte) s.charAt(i);
+        }
+    }
+
+    /**
+     * Writes the string as UTF-8 encoded XML character data.
+     */
+    void writeText(final String s) {
+        final int length = s.length();
+        for (int i = 0; i < length; i++) {
+            final char c = s.charAt(i);
+            switch (c) {
+            case '&':
+                writeAscii("&amp;");
+                break;
+            case '<':
+                writeAscii("&lt;");
+                break;
+            case '>':
+                writeAscii("&gt;");
+                break;
+            case '"':
+                writeAscii("&quot;");
+                break;
+            default:
+                if (c < 0x80) {
+                    write(c);
+                } else if (c < 0x800) {
+                    write(0xC0 | c >> 6);
+                    write(0x80 | c & 0x3F);
+                } else if (Character.isHighSurrogate(c) && i + 1 < length
+                        && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    final int codePoint = Character.toCodePoint(c, s.charAt(++i));
+                    write(0xF0 | codePoint >> 18);
+                    write(0x80 | codePoint >> 12 & 0x3F);
+                    write(0x80 | codePoint >> 6 & 0x3F);
+                    write(0x80 | codePoint & 0x3F);
+                } else {
+                    write(0xE0 | c >> 12);
+                    write(0x80 | c >> 6 & 0x3F);
+                    write(0x80 | c & 0x3F);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the position of the last occurrence of the given byte sequence or -1.
+     */
+    int lastIndexOf(final byte[] pattern) {
+        outer: for (int i = count - pattern.length; i >= 0; i--) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (buf[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(capacity, buf.length * 2));
+        }
+    }
+}
@@ -0,0 +1,312 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import javax.xml.ws.WebServiceException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ecs.client.jax.Item;
+import com.ecs.client.jax.ItemLookupRequest;
+import com.ecs.client.jax.Items;
+
+/**
+ * Packs concurrent single ASIN lookups into one ItemLookup of up to ten ASINs. The first lookup of a batch waits for
+ * further lookups with the same parameters, sends them together and hands each caller its items. How long it waits
+ * follows the time between lookups: if no further lookup is expected within the maximum window it does not wait at
+ * all, so latency stays low when traffic is light. The window also ends halfway to the earliest {@link Deadline} of the
+ * waiting callers, so that the lookup itself has time left. If Amazon rejects the batch it is split in halves until the
+ * rejected ASINs are found, so one invalid ASIN costs a few more lookups instead of one per caller.
+ */
+class ItemLookupBatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ItemLookupBatcher.class);
+
+    static final int MAX_BATCH_SIZE = 10;
+    static final long DEFAULT_MAX_WINDOW_MILLIS = 20;
+
+    private final Function<ItemLookupRequest, List<Items>> lookup;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<List<Object>, Batch> open = new HashMap<>();
+    private long lastArrival;
+    private double gapNanos = Double.MAX_VALUE;
+
+    private volatile long maxWindowNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_WINDOW_MILLIS);
+    private volatile boolean enabled;
+
+    private final LongAdder batched = new LongAdder();
+
+    private final class Batch {
+        private final List<String> asins = new ArrayList<>(MAX_BATCH_SIZE);
+        private final List<CompletableFuture<List<Items>>> followers = new ArrayList<>(MAX_BATCH_SIZE - 1);
+        // Signalled when the batch is full or a caller with an earlier deadline joined
+        private final Condition changed = lock.newCondition();
+        // System.nanoTime() at which the leader stops waiting
+        private long sendAt;
+    }
+
+    ItemLookupBatcher(final Function<ItemLookupRequest, List<Items>> lookup) {
+        this.lookup = lookup;
+    }
+
+    /**
+     * Returns whether the request is a lookup of a single ASIN which can be batched.
+     */
+    boolean supports(final ItemLookupRequest request) {
+        return enabled && request.getItemId().size() == 1
+                && (request.getIdType() == null || "ASIN".equalsIgnoreCase(request.getIdType()));
+    }
+
+    List<Items> lookup(final ItemLookupRequest request) {
+        final String asin = request.getItemId().get(0);
+        final List<Object> key = SingleFlight.key("ItemLookup", null, copy(request, new ArrayList<>()));
+        CompletableFuture<List<Items>> joined = null;
+        Batch batch = null;
+        lock.lock();
+        try {
+            final long now = System.nanoTime();
+            updateGap(now);
+            final Batch existing = open.get(key);
+            if (existing != null) {
+                joined = new CompletableFuture<>();
+                existing.asins.add(asin);
+                existing.followers.add(joined);
+                if (existing.asins.size() == MAX_BATCH_SIZE) {
+                    open.remove(key);
+                    existing.changed.signal();
+                } else if (existing.sendAt - sendBy(now) > 0) {
+                    existing.sendAt = sendBy(now);
+                    existing.changed.signal();
+                }
+            } else {
+                final long window = Math.min(getWindow(), sendBy(now) - now);
+                if (window > 0) {
+                    batch = new Batch();
+                    batch.asins.add(asin);
+                    batch.sendAt = now + window;
+                    open.put(key, batch);
+                    long remaining = window;
+                    while (batch.asins.size() < MAX_BATCH_SIZE && remaining > 0) {
+                        batch.changed.awaitNanos(remaining);
+                        remaining = batch.sendAt - System.nanoTime();
+                    }
+                    open.remove(key, batch);
+                }
+            }
+        } catch (final InterruptedException e) {
+            open.remove(key, batch);
+            // Let the followers send their lookups on their own
+            batch.followers.forEach(f -> f.complete(null));
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while collecting a batch of lookups", e);
+        } finally {
+            lock.unlock();
+        }
+        if (joined != null) {
+            return follow(joined, request);
+        }
+        if (batch == null) {
+            return lookup.apply(request);
+        }
+        return send(batch, request);
+    }
+
+    /**
+     * Returns the latest time at which a lookup of the calling thread should be sent: halfway to its deadline.
+     */
+    private static long sendBy(final long now) {
+        final long remaining = Deadline.remainingNanos();
+        return remaining == Long.MAX_VALUE ? now + Long.MAX_VALUE / 2 : now + remaining / 2;
+    }
+
+    private List<Items> send(final Batch batch, final ItemLookupRequest request) {
+        if (batch.followers.isEmpty()) {
+            return lookup.apply(request);
+        }
+        final Map<String, List<Items>> found = new HashMap<>();
+        final Map<String, RuntimeException> rejected = new HashMap<>();
+        try {
+            lookup(request, new ArrayList<>(new LinkedHashSet<>(batch.asins)), found, rejected);
+        } catch (final RuntimeException e) {
+            if (RetryEngine.isCallerLocal(e)) {
+                // The leader failed for a reason of its own, the followers send their lookups under their own deadline
+                batch.followers.forEach(f -> f.complete(null));
+            } else {
+                batch.followers.forEach(f -> f.completeExceptionally(e));
+            }
+            throw e;
+        } catch (final Error e) {
+            batch.followers.forEach(f -> f.completeExceptionally(e));
+            throw e;
+        }
+        batched.add(batch.asins.size());
+        for (int i = 0; i < batch.followers.size(); i++) {
+            final String asin = batch.asins.get(i + 1);
+            if (rejected.containsKey(asin)) {
+                batch.followers.get(i).completeExceptionally(rejected.get(asin));
+            } else {
+                batch.followers.get(i).complete(found.get(asin));
+            }
+        }
+        if (rejected.containsKey(batch.asins.get(0))) {
+            throw rejected.get(batch.asins.get(0));
+        }
+        return found.get(batch.asins.get(0));
+    }
+
+    /**
+     * Looks up the ASINs together. If Amazon rejects the lookup it is split in halves until the rejected ASINs are
+     * found.
+     */
+    private void lookup(final ItemLookupRequest request, final List<String> asins, final Map<String, List<Items>> found,
+            final Map<String, RuntimeException> rejected) {
+        final List<Items> result;
+        try {
+            result = lookup.apply(copy(request, asins));
+        } catch (final IllegalArgumentException e) {
+            if (asins.size() == 1) {
+                rejected.put(asins.get(0), e);
+                return;
+            }
+            LOG.debug("Batch of {} lookups rejected, splitting it: {}", asins.size(), e.getMessage());
+            lookup(request, asins.subList(0, asins.size() / 2), found, rejected);
+            lookup(request, asins.subList(asins.size() / 2, asins.size()), found, rejected);
+            return;
+        }
+        for (final String asin : asins) {
+            found.put(asin, split(result, asin));
+        }
+    }
+
+    private List<Items> follow(final CompletableFuture<List<Items>> future, final ItemLookupRequest request) {
+        final List<Items> result;
+        try {
+            final long remaining = Deadline.remainingNanos();
+            result = remaining == Long.MAX_VALUE ? future.get() : future.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            throw new DeadlineExceededException("Deadline exceeded while waiting for a batch of lookups");
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while waiting for a batch of lookups", e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw (Error) e.getCause();
+        }
+        // The leader failed on its own, send the lookup on its own
+        return result != null ? result : lookup.apply(request);
+    }
+
+    private void updateGap(final long now) {
+        if (lastArrival != 0) {
+            final double gap = Math.min(now - lastArrival, TimeUnit.SECONDS.toNanos(1));
+            gapNanos = gapNanos == Double.MAX_VALUE ? gap : 0.7 * gapNanos + 0.3 * gap;
+        }
+        lastArrival = now;
+    }
+
+    /**
+     * Returns how long to wait for further lookups: long enough to fill the batch at the current arrival rate, but
+     * not at all if the next lookup is not expected within the maximum window.
+     */
+    private long getWindow() {
+        final long maxWindow = maxWindowNanos;
+        if (gapNanos >= maxWindow) {
+            return 0;
+        }
+        return (long) Math.min(maxWindow, gapNanos * (MAX_BATCH_SIZE - 1));
+    }
+
+    private static List<Items> split(final List<Items> result, final String asin) {
+        final List<Items> split = new ArrayList<>(result.size());
+        for (final Items items : result) {
+            final Items own = new Items();
+            own.setRequest(items.getRequest());
+            for (final Item item : items.getItem()) {
+                if (asin.equalsIgnoreCase(item.getASIN())) {
+                    own.getItem().add(item);
+                }
+            }
+            split.add(own);
+        }
+        return split;
+    }
+
+    private static ItemLookupRequest copy(final ItemLookupRequest request, final List<String> itemIds) {
+        final ItemLookupRequest copy = new ItemLookupRequest();
+        copy.setCondition(request.getCondition());
+        copy.setIdType(request.getIdType());
+        copy.setMerchantId(request.getMerchantId());
+        copy.getItemId().addAll(itemIds);
+        copy.getResponseGroup().addAll(request.getResponseGroup());
+        copy.setSearchIndex(request.getSearchIndex());
+        copy.setVariationPage(request.getVariationPage());
+        copy.setRelatedItemPage(request.getRelatedItemPage());
+        copy.getRelationshipType().addAll(request.getRelationshipType());
+        copy.setIncludeReviewsSummary(request.getIncludeReviewsSummary());
+        copy.setTruncateReviewsAt(request.getTruncateReviewsAt());
+        return copy;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    long getMaxWindowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWindowNanos);
+    }
+
+    void setMaxWindowMillis(final long maxWindowMillis) {
+        if (maxWindowMillis < 0) {
+            throw new IllegalArgumentException("maxWindowMillis must not be negative.");
+        }
+        maxWindowNanos = TimeUnit.MILLISECONDS.toNanos(maxWindowMillis);
+    }
+
+    /**
+     * Returns the number of lookups sent as part of a batch.
+     */
+    long getBatchedLookups() {
+        return batched.sum();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.ecs.client.jax.ItemLookup;
+import com.ecs.client.jax.ItemLookupRequest;
+
+/**
+ * Encodes ItemLookup requests from pre-serialized templates. Lookups of the same shape (everything but the item ids)
+ * share a template, only the item ids, the timestamp and the signature are written per request. Requests using
+ * elements not covered by the templates are left to {@link SoapCodec#encode}.
+ */
+final class ItemLookupTemplateEncoder {
+
+    static final String OPERATION = "ItemLookup";
+
+    private static final int MAX_TEMPLATES = 256;
+
+    private static final byte[] ITEM_ID_START = "<ItemId>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ITEM_ID_END = "</ItemId>".getBytes(StandardCharsets.UTF_8);
+
+    private final Map<String, Template> templates = new ConcurrentHashMap<>();
+
+    /**
+     * Returns whether the lookup can be encoded from a template.
+     */
+    static boolean supports(final ItemLookup wrapper) {
+        final ItemLookupRequest shared = wrapper.getShared();
+        return shared != null && wrapper.getRequest().isEmpty()
+                && shared.getVariationPage() == null
+                && shared.getRelatedItemPage() == null
+                && shared.getRelationshipType().isEmpty()
+                && shared.getIncludeReviewsSummary() == null
+                && shared.getTruncateReviewsAt() == null;
+    }
+
+    void encode(final ItemLookup wrapper, final RequestSigner signer, final EnvelopeBuffer out) {
+        final Template template = getTemplate(wrapper);
+        out.write(template.head);
+        for (final String itemId : wrapper.getShared().getItemId()) {
+            out.write(ITEM_ID_START);
+            out.writeText(itemId);
+            out.write(ITEM_ID_END);
+        }
+        out.write(template.tail);
+        SoapCodec.writeSignature(out, "", OPERATION, signer);
+        out.write(template.end);
+    }
+
+    private Template getTemplate(final ItemLookup wrapper) {
+        final String shape = shape(wrapper);
+        Template template = templates.get(shape);
+        if (template == null) {
+            template = new Template(wrapper);
+            if (templates.size() < MAX_TEMPLATES) {
+                templates.putIfAbsent(shape, template);
+            }
+        }
+        return template;
+    }
+
+    private static String shape(final ItemLookup wrapper) {
+        final ItemLookupRequest shared = wrapper.getShared();
+        final StringBuilder sb = new StringBuilder(128);
+        append(sb, wrapper.getMarketplaceDomain());
+        append(sb, wrapper.getAWSAccessKeyId());
+        append(sb, wrapper.getAssociateTag());
+        append(sb, wrapper.getValidate());
+        append(sb, wrapper.getXMLEscaping());
+        append(sb, shared.getCondition());
+        append(sb, shared.getIdType());
+        append(sb, shared.getMerchantId());
+        append(sb, shared.getSearchIndex());
+        for (final String responseGroup : shared.getResponseGroup()) {
+            append(sb, responseGroup);
+        }
+        return sb.toString();
+    }
+
+    private static void append(final StringBuilder sb, final String value) {
+        // Separator can not be part of a valid XML value
+        sb.append(value).append('\u0000');
+    }
+
+    private static class Template {
+        // Envelope up to the first ItemId
+        private final byte[] head;
+        // Everything after the last ItemId up to the signature
+        private final byte[] tail;
+        // End tags after the timestamp
+        private final byte[] end;
+
+        Template(final ItemLookup wrapper) {
+            final ItemLookupRequest shared = wrapper.getShared();
+            final EnvelopeBuffer out = new EnvelopeBuffer();
+            SoapCodec.writeEnvelopeStart(out);
+            out.writeAscii("<ItemLookup xmlns=\"" + SoapCodec.AWS_NS + "\">");
+            writeElement(out, "MarketplaceDomain", wrapper.getMarketplaceDomain());
+            writeElement(out, "AWSAccessKeyId", wrapper.getAWSAccessKeyId());
+            writeElement(out, "AssociateTag", wrapper.getAssociateTag());
+            writeElement(out, "Validate", wrapper.getValidate());
+            writeElement(out, "XMLEscaping", wrapper.getXMLEscaping());
+            out.writeAscii("<Shared>");
+            writeElement(out, "Condition", shared.getCondition());
+            writeElement(out, "IdType", shared.getIdType());
+            writeElement(out, "MerchantId", shared.getMerchantId());
+            head = copy(out);
+
+            out.truncate(0);
+            writeElements(out, "ResponseGroup", shared.getResponseGroup());
+            writeElement(out, "SearchIndex", shared.getSearchIndex());
+            out.writeAscii("</Shared>");
+            tail = copy(out);
+
+            out.truncate(0);
+            out.writeAscii("</ItemLookup>");
+            SoapCodec.writeEnvelopeEnd(out);
+            end = copy(out);
+        }
+
+        private static void writeElements(final EnvelopeBuffer out, final String name, final List<String> values) {
+            for (final String value : values) {
+                writeElement(out, name, value);
+            }
+        }
+
+        private static void writeElement(final EnvelopeBuffer out, final String name, final String value) {
+            if (value != null) {
+                out.writeAscii("<" + name + ">");
+                out.writeText(value);
+                out.writeAscii("</" + name + ">");
+            }
+        }
+
+        private static byte[] copy(final EnvelopeBuffer out) {
+            final byte[] bytes = new byte[out.size()];
+            System.arraycopy(out.array(), 0, bytes, 0, bytes.length);
+            return bytes;
+        }
+    }
+}
@@ -44,52 +44,85 @@ public class ItemRequestHandler {
     private final String marketplace;
     private final String accessKeyId;
     private final String tag;
-    private final AWSECommerceServicePortType port;
+    private final PortPool ports;
 
+    /**
+     * Creates a handler sending all requests through the given port, one at a time.
+     */
     public ItemRequestHandler(final String marketplace, final String accessKeyId, final String tag,
             final AWSECommerceServicePortType port) {
+        this(marketplace, accessKeyId, tag, new PortPool(marketplace, () -> port, 1));
+    }
+
+    ItemRequestHandler(final String marketplace, final String accessKeyId, final String tag, final PortPool ports) {
         this.marketplace = marketplace;
         this.accessKeyId = accessKeyId;
         this.tag = tag;
-        this.port = port;
+        this.ports = ports;
     }
 
     List<Items> itemSearch(final ItemSearchRequest request, final PaapiParams params) {
-        final List<ItemSearchRequest> requests = new ArrayList<>();
+        return itemSearch(request, new ArrayList<>(), params);
+    }
+
+    /**
+     * Sends the shared parameters and up to two requests in one call. Returns one {@link Items} per request, a request
+     * with errors of its own is returned with them and does not fail the other one.
+     */
+    List<Items> itemSearch(final ItemSearchRequest shared, final List<ItemSearchRequest> requests,
+            final PaapiParams params) {
         final Holder<OperationRequest> operationRequest = new Holder<>();
         final Holder<List<Items>> result = new Holder<>();
-        port.itemSearch(marketplace,
-                accessKeyId,
-                tag,
-                params.getValidating(),
-                params.getEscaping(),
-                request,
-                requests,
-                operationRequest,
-                result);
+        final AWSECommerceServicePortType port = ports.borrow();
+        try {
+            port.itemSearch(marketplace,
+                    accessKeyId,
+                    tag,
+                    params.getValidating(),
+                    params.getEscaping(),
+                    shared,
+                    requests,
+                    operationRequest,
+                    result);
+        } finally {
+            ports.release(port);
+        }
         LOG.info("itemSearch took {}", operationRequest.value.getRequestProcessingTime());
         if (params.isValidate()) {
-            checkForErrors(result);
+            checkForErrors(result, requests.size());
         }
         return result.value;
     }
 
     List<Items> itemLookup(final ItemLookupRequest request, final PaapiParams params) {
-        final List<ItemLookupRequest> requests = new ArrayList<>();
+        return itemLookup(request, new ArrayList<>(), params);
+    }
+
+    /**
+     * Sends the shared parameters and up to two requests in one call. Returns one {@link Items} per request, a request
+     * with errors of its own is returned with them and does not fail the other one.
+     */
+    List<Items> itemLookup(final ItemLookupRequest shared, final List<ItemLookupRequest> requests,
+            final PaapiParams params) {
         final Holder<OperationRequest> operationRequest = new Holder<>();
         final Holder<List<Items>> result = new Holder<>();
-        port.itemLookup(marketplace,
-                accessKeyId,
-                tag,
-                params.getValidating(),
-                params.getEscaping(),
-                request,
-                requests,
-                operationRequest,
-                result);
+        final AWSECommerceServicePortType port = ports.borrow();
+        try {
+            port.itemLookup(marketplace,
+                    accessKeyId,
+                    tag,
+                    params.getValidating(),
+                    params.getEscaping(),
+                    shared,
+                    requests,
+                    operationRequest,
+                    result);
+        } finally {
+            ports.release(port);
+        }
         LOG.info("itemLookup took {}", operationRequest.value.getRequestProcessingTime());
         if (params.isValidate()) {
-            checkForErrors(result);
+            checkForErrors(result, requests.size());
         }
         return result.value;
     }
@@ -98,15 +131,20 @@ public class ItemRequestHandler {
         final List<SimilarityLookupRequest> requests = new ArrayList<>();
         final Holder<OperationRequest> operationRequest = new Holder<>();
         final Holder<List<Items>> result = new Holder<>();
-        port.similarityLookup(marketplace,
-                accessKeyId,
-                tag,
-                params.getValidating(),
-                params.getEscaping(),
-                request,
-                requests,
-                operationRequest,
-                result);
+        final AWSECommerceServicePortType port = ports.borrow();
+        try {
+            port.similarityLookup(marketplace,
+                    accessKeyId,
+                    tag,
+                    params.getValidating(),
+                    params.getEscaping(),
+                    request,
+                    requests,
+                    operationRequest,
+                    result);
+        } finally {
+            ports.release(port);
+        }
         LOG.info("similarityLookup took {}", operationRequest.value.getRequestProcessingTime());
         if (params.isValidate()) {
             checkForErrors(result);
@@ -114,17 +152,35 @@ public class ItemRequestHandler {
         return result.value;
     }
 
+    /**
+     * Checks the result of a call with the given number of requests besides the shared parameters. A request of a batch
+     * which Amazon rejected is returned with its errors, even if it is the only one or all requests were rejected. A
+     * throttled request fails the call, so that it is retried and the rate is lowered.
+     */
+    static void checkForErrors(final Holder<List<Items>> result, final int requests) {
+        if (requests == 0 || result.value.size() != requests) {
+            checkForErrors(result);
+            return;
+        }
+        final List<Errors.Error> throttled = result.value.stream().filter(i -> i.getRequest().getErrors() != null)
+                .flatMap(i -> i.getRequest().getErrors().getError().stream())
+                .filter(ResponseErrors::isThrottled)
+                .collect(Collectors.toList());
+        if (!throttled.isEmpty()) {
+            throw ResponseErrors.toException(throttled);
+        }
+    }
+
     static void checkForErrors(final Holder<List<Items>> result) {
-        if (!result.value.isEmpty() && result.value.get(0).getRequest().getErrors() == null
-                && "True".equalsIgnoreCase(result.value.get(0).getRequest().getIsValid())) {
+        if (!result.value.isEmpty() && result.value.stream().allMatch(ItemRequestHandler::isValid)) {
             return;
         }
-        final String errorMessage = result.value.stream().flatMap(i -> i.getRequest().getErrors().getError().stream())
-                .map(e -> makeString(e)).collect(Collectors.joining(System.lineSeparator()));
-        throw new IllegalArgumentException(errorMessage);
+        throw ResponseErrors.toException(result.value.stream().filter(i -> i.getRequest().getErrors() != null)
+                .flatMap(i -> i.getRequest().getErrors().getError().stream())
+                .collect(Collectors.toList()));
     }
 
-    static String makeString(final Errors.Error error) {
-        return error.getCode() + ": " + error.getMessage();
+    private static boolean isValid(final Items items) {
+        return items.getRequest().getErrors() == null && "True".equalsIgnoreCase(items.getRequest().getIsValid());
     }
 }
@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.ecs.client.jax.Item;
+import com.ecs.client.jax.ItemSearchRequest;
+import com.ecs.client.jax.Items;
+
+/**
+ * Publishes the items of all pages of a search. Pages are only fetched on demand: the first page once the subscriber
+ * requested an item, the next page once the subscriber has demand left and read half of the current page. No page is
+ * fetched after the subscriber cancelled: a fetch which has not started yet is skipped, a running one is interrupted
+ * while it waits for quota and its page is dropped. Each subscriber gets its own pages.
+ */
+class ItemSearchPublisher implements Publisher<Item> {
+
+    // Amazon returns at most ten pages of a search
+    static final int MAX_PAGES = 10;
+
+    private static final class ExecutorHolder {
+        private static final ExecutorService EXECUTOR = PaapiExecutors.newPerTaskExecutor("paapi-search-pages");
+    }
+
+    private final Function<ItemSearchRequest, List<Items>> search;
+    private final ItemSearchRequest request;
+
+    ItemSearchPublisher(final Function<ItemSearchRequest, List<Items>> search, final ItemSearchRequest request) {
+        this.search = search;
+        this.request = SingleFlight.copy(request);
+    }
+
+    @Override
+    public void subscribe(final Subscriber<? super Item> subscriber) {
+        Objects.requireNonNull(subscriber, "subscriber");
+        final PageSubscription subscription = new PageSubscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.drain();
+    }
+
+    private final class PageSubscription implements Subscription {
+
+        private final Subscriber<? super Item> subscriber;
+        private final RequestPriority priority = RequestScheduler.getCurrentPriority();
+        private final Deadline deadline = Deadline.current();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean cancelled;
+        private volatile Throwable invalidRequest;
+        private volatile CompletableFuture<List<Items>> pending;
+        private volatile Future<?> fetching;
+
+        // Only accessed by the thread draining
+        private final Queue<Item> buffer = new ArrayDeque<>();
+        private int page;
+        private int lastPage = 1;
+        private int pageSize;
+        private boolean done;
+
+        PageSubscription(final Subscriber<? super Item> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        @Override
+        public void request(final long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("Requested " + n + " items, must be positive");
+            } else {
+                requested.getAndUpdate(r -> r + n < 0 ? Long.MAX_VALUE : r + n);
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            final Future<?> f = fetching;
+            if (f != null) {
+                // Stops the fetch before it takes a permit, its page is dropped in any case
+                f.cancel(true);
+            }
+            final CompletableFuture<List<Items>> p = pending;
+            if (p != null) {
+                p.cancel(false);
+            }
+        }
+
+        void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                emit();
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void emit() {
+            while (!cancelled && !done) {
+                if (invalidRequest != null) {
+                    terminate(invalidRequest);
+                    return;
+                }
+                if (pending == null && page < lastPage && requested.get() > 0
+                        && (page == 0 || buffer.size() <= pageSize / 2)) {
+                    fetch(page + 1);
+                }
+                if (buffer.isEmpty()) {
+                    final CompletableFuture<List<Items>> p = pending;
+                    if (p == null) {
+                        if (page >= lastPage) {
+                            done = true;
+                            subscriber.onComplete();
+                        }
+                        return;
+                    }
+                    if (!p.isDone()) {
+                        return;
+                    }
+                    pending = null;
+                    try {
+                        accept(p.join());
+                    } catch (final CompletionException e) {
+                        terminate(e.getCause());
+                        return;
+                    }
+                    continue;
+                }
+                if (requested.get() == 0) {
+                    return;
+                }
+                if (requested.get() != Long.MAX_VALUE) {
+                    requested.decrementAndGet();
+                }
+                subscriber.onNext(buffer.poll());
+            }
+        }
+
+        private void fetch(final int number) {
+            page = number;
+            final ItemSearchRequest pageRequest = SingleFlight.copy(request);
+            pageRequest.setItemPage(BigInteger.valueOf(number));
+            final CompletableFuture<List<Items>> p = new CompletableFuture<>();
+            pending = p;
+            p.whenComplete((result, e) -> drain());
+            fetching = ExecutorHolder.EXECUTOR.submit(() -> {
+                if (cancelled) {
+                    p.cancel(false);
+                    return;
+                }
+                try {
+                    p.complete(Deadline.with(deadline,
+                            () -> RequestScheduler.withPriority(priority, () -> search.apply(pageRequest))));
+                } catch (final RuntimeException | Error e) {
+                    p.completeExceptionally(e);
+                }
+            });
+            if (cancelled) {
+                // Cancelled while the fetch was submitted
+                fetching.cancel(true);
+            }
+        }
+
+        private void accept(final List<Items> result) {
+            int total = 0;
+            for (final Items items : result) {
+                buffer.addAll(items.getItem());
+                if (items.getTotalPages() != null) {
+                    total = Math.max(total, items.getTotalPages().intValue());
+                }
+            }
+            pageSize = buffer.size();
+            lastPage = Math.min(total, MAX_PAGES);
+        }
+
+        private void terminate(final Throwable e) {
+            done = true;
+            buffer.clear();
+            subscriber.onError(e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.function.Function;
+
+import com.ecs.client.jax.AWSECommerceService;
+import com.ecs.client.jax.AWSECommerceServicePortType;
+
+/**
+ * The marketplaces of the Product Advertising API with their SOAP endpoints.
+ */
+enum Marketplace {
+    CA("webservices.amazon.ca", AWSECommerceService::getAWSECommerceServicePortCA),
+    CN("webservices.amazon.cn", AWSECommerceService::getAWSECommerceServicePortCN),
+    DE("webservices.amazon.de", AWSECommerceService::getAWSECommerceServicePortDE),
+    ES("webservices.amazon.es", AWSECommerceService::getAWSECommerceServicePortES),
+    FR("webservices.amazon.fr", AWSECommerceService::getAWSECommerceServicePortFR),
+    IN("webservices.amazon.in", AWSECommerceService::getAWSECommerceServicePortIN),
+    IT("webservices.amazon.it", AWSECommerceService::getAWSECommerceServicePortIT),
+    JP("webservices.amazon.co.jp", AWSECommerceService::getAWSECommerceServicePortJP),
+    UK("webservices.amazon.co.uk", AWSECommerceService::getAWSECommerceServicePortUK),
+    US("webservices.amazon.com", AWSECommerceService::getAWSECommerceServicePortUS);
+
+    private final String endpoint;
+    private final Function<AWSECommerceService, AWSECommerceServicePortType> portFactory;
+
+    private Marketplace(final String host,
+            final Function<AWSECommerceService, AWSECommerceServicePortType> portFactory) {
+        endpoint = "https://" + host + "/onca/soap?Service=AWSECommerceService";
+        this.portFactory = portFactory;
+    }
+
+    /**
+     * Returns the SOAP endpoint URL of this marketplace.
+     */
+    String getEndpoint() {
+        return endpoint;
+    }
+
+    AWSECommerceServicePortType getPort(final AWSECommerceService service) {
+        return portFactory.apply(service);
+    }
+
+    static Marketplace fromString(final String marketplace) throws IllegalArgumentException {
+        try {
+            return valueOf(marketplace.toUpperCase());
+        } catch (final IllegalArgumentException e) {
+            throw new IllegalArgumentException(marketplace
+                    + " is not a valid marketplace identifier. Possible values are [CA,CN,DE,ES,FR,IN,IT,JP,UK,US]");
+        }
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+import javax.xml.ws.WebServiceException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ecs.client.jax.ItemLookupRequest;
+import com.ecs.client.jax.ItemSearchRequest;
+import com.ecs.client.jax.Items;
+
+/**
+ * Sends the same request to several marketplaces in parallel. There is one {@link PaapiClientImpl} per marketplace,
+ * created on first use, so every marketplace keeps its own quota, retries and circuit breakers. All clients share the
+ * JAX-WS service and, if given, the transport.
+ */
+public class MultiMarketplaceClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MultiMarketplaceClient.class);
+
+    private static final class ExecutorHolder {
+        private static final ExecutorService EXECUTOR = PaapiExecutors.newPerTaskExecutor("paapi-fan-out");
+    }
+
+    private final Map<String, PaapiCredentials> credentials;
+    private final PaapiTransport transport;
+    private final ConcurrentMap<String, PaapiClientImpl> clients = new ConcurrentHashMap<>();
+
+    public MultiMarketplaceClient(final Map<String, PaapiCredentials> credentials) {
+        this(credentials, null);
+    }
+
+    /**
+     * Creates a client for the marketplaces with the credentials to use for each, associate tags differ between
+     * marketplaces.
+     *
+     * @param transport
+     *            transport to send requests with or {@code null} to use the JAX-WS runtime
+     */
+    public MultiMarketplaceClient(final Map<String, PaapiCredentials> credentials, final PaapiTransport transport) {
+        final Map<String, PaapiCredentials> normalized = new LinkedHashMap<>();
+        credentials.forEach((marketplace, c) -> {
+            PaapiClientImpl.checkArgs(c.getAccessKeyId(), c.getSecretAccessKey(), c.getTag());
+            normalized.put(Marketplace.fromString(marketplace).name(), c);
+        });
+        this.credentials = normalized;
+        this.transport = transport;
+    }
+
+    /**
+     * Returns the client of the marketplace, creating it on first use.
+     */
+    public PaapiClientImpl getClient(final String marketplace) {
+        final String name = Marketplace.fromString(marketplace).name();
+        final PaapiCredentials c = credentials.get(name);
+        if (c == null) {
+            throw new IllegalArgumentException("No credentials for marketplace " + marketplace);
+        }
+        return clients.computeIfAbsent(name, m -> {
+            LOG.debug("Create client for marketplace {}", m);
+            return new PaapiClientImpl(m, Collections.singletonList(c), transport);
+        });
+    }
+
+    public Collection<String> getMarketplaces() {
+        return credentials.keySet();
+    }
+
+    public MarketplaceResults<List<Items>> itemLookup(final ItemLookupRequest request) {
+        return fanOut(getMarketplaces(), client -> client.itemLookup(request));
+    }
+
+    public MarketplaceResults<List<Items>> itemLookup(final ItemLookupRequest request,
+            final Collection<String> marketplaces) {
+        return fanOut(marketplaces, client -> client.itemLookup(request));
+    }
+
+    public MarketplaceResults<List<Items>> itemSearch(final ItemSearchRequest request) {
+        return fanOut(getMarketplaces(), client -> client.itemSearch(request));
+    }
+
+    public MarketplaceResults<List<Items>> itemSearch(final ItemSearchRequest request,
+            final Collection<String> marketplaces) {
+        return fanOut(marketplaces, client -> client.itemSearch(request));
+    }
+
+    /**
+     * Calls the clients of the marketplaces in parallel and waits for all of them. The request objects are shared by
+     * the calls and must not be changed until this method returned.
+     */
+    public <T> MarketplaceResults<T> fanOut(final Collection<String> marketplaces,
+            final Function<PaapiClientImpl, T> call) {
+        final RequestPriority priority = RequestScheduler.getCurrentPriority();
+        final Deadline deadline = Deadline.current();
+        final Map<String, Future<T>> futures = new LinkedHashMap<>();
+        final Map<String, T> results = new LinkedHashMap<>();
+        final Map<String, RuntimeException> failures = new LinkedHashMap<>();
+        try {
+            for (final String marketplace : new LinkedHashSet<>(marketplaces)) {
+                final PaapiClientImpl client;
+                try {
+                    client = getClient(marketplace);
+                } catch (final RuntimeException e) {
+                    failures.put(marketplace, e);
+                    continue;
+                }
+                futures.put(marketplace, ExecutorHolder.EXECUTOR.submit(() -> Deadline.with(deadline,
+                        () -> RequestScheduler.withPriority(priority, () -> call.apply(client)))));
+            }
+            for (final Map.Entry<String, Future<T>> future : futures.entrySet()) {
+                try {
+                    results.put(future.getKey(), future.getValue().get());
+                } catch (final ExecutionException e) {
+                    if (!(e.getCause() instanceof RuntimeException)) {
+                        throw new WebServiceException("Call to " + future.getKey() + " failed", e.getCause());
+                    }
+                    LOG.warn("Call to {} failed: {}", future.getKey(), e.getCause().getMessage());
+                    failures.put(future.getKey(), (RuntimeException) e.getCause());
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while waiting for " + futures.keySet(), e);
+        } finally {
+            futures.values().forEach(f -> f.cancel(true));
+        }
+        return new MarketplaceResults<>(results, failures);
+    }
+
+    /**
+     * Returns the clients created so far by marketplace.
+     */
+    public Map<String, PaapiClientImpl> getClients() {
+        final Map<String, PaapiClientImpl> result = new LinkedHashMap<>();
+        credentials.keySet().stream().filter(clients::containsKey).forEach(m -> result.put(m, clients.get(m)));
+        return result;
+    }
+}
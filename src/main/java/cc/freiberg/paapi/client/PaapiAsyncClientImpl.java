@@ -0,0 +1,429 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.xml.ws.Holder;
+import javax.xml.ws.WebServiceException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ecs.client.jax.BrowseNodeLookup;
+import com.ecs.client.jax.BrowseNodeLookupRequest;
+import com.ecs.client.jax.BrowseNodeLookupResponse;
+import com.ecs.client.jax.BrowseNodes;
+import com.ecs.client.jax.Cart;
+import com.ecs.client.jax.CartAdd;
+import com.ecs.client.jax.CartAddRequest;
+import com.ecs.client.jax.CartAddResponse;
+import com.ecs.client.jax.CartClear;
+import com.ecs.client.jax.CartClearRequest;
+import com.ecs.client.jax.CartClearResponse;
+import com.ecs.client.jax.CartCreate;
+import com.ecs.client.jax.CartCreateRequest;
+import com.ecs.client.jax.CartCreateResponse;
+import com.ecs.client.jax.CartGet;
+import com.ecs.client.jax.CartGetRequest;
+import com.ecs.client.jax.CartGetResponse;
+import com.ecs.client.jax.CartModify;
+import com.ecs.client.jax.CartModifyRequest;
+import com.ecs.client.jax.CartModifyResponse;
+import com.ecs.client.jax.ItemLookup;
+import com.ecs.client.jax.ItemLookupRequest;
+import com.ecs.client.jax.ItemLookupResponse;
+import com.ecs.client.jax.ItemSearch;
+import com.ecs.client.jax.ItemSearchRequest;
+import com.ecs.client.jax.ItemSearchResponse;
+import com.ecs.client.jax.Items;
+import com.ecs.client.jax.SimilarityLookup;
+import com.ecs.client.jax.SimilarityLookupRequest;
+import com.ecs.client.jax.SimilarityLookupResponse;
+
+/**
+ * {@link PaapiAsyncClient} on top of a non-blocking {@link PaapiAsyncTransport}. Requests are encoded with the same
+ * codec as the blocking transport, sent by the I/O threads of the transport and decoded when the response arrived, no
+ * thread waits for a response. The rate limit is enforced by delaying the request on a scheduler, at most
+ * {@link #getMaxRateLimitWaitMillis()} ahead, retries are scheduled the same way. Like the blocking client every
+ * operation has a circuit breaker, throttling adjusts the rate if adaptive rate is enabled, and the {@link Deadline}
+ * of the calling thread bounds the whole call. Cancelling a future aborts the request and gives back its permit.
+ */
+public class PaapiAsyncClientImpl implements PaapiAsyncClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PaapiAsyncClientImpl.class);
+
+    public static final long DEFAULT_MAX_RATE_LIMIT_WAIT_MILLIS = 10000;
+
+    private static final String SOAP_ACTION_PREFIX = "http://soap.amazon.com/";
+
+    private static final List<String> OPERATIONS = Arrays.asList("ItemSearch", "BrowseNodeLookup", "ItemLookup",
+            "SimilarityLookup", "CartAdd", "CartCreate", "CartClear", "CartGet", "CartModify");
+
+    private final String endpoint;
+    private final PaapiCredentials credentials;
+    private final PaapiParams params;
+    private final PaapiAsyncTransport transport;
+    private final RequestSigner signer;
+
+    private final TokenBucket rateLimiter;
+    private final AimdRateController rateController;
+    private final RetryEngine retryEngine = new RetryEngine();
+    private final Map<String, CircuitBreaker> circuitBreakers;
+    private volatile long maxRateLimitWaitNanos = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_RATE_LIMIT_WAIT_MILLIS);
+
+    private static final class TransportHolder {
+        private static final PaapiAsyncTransport TRANSPORT = new AsyncHttpTransport();
+    }
+
+    public PaapiAsyncClientImpl() {
+        this(AWSConfig.getMarketplace(), AWSConfig.getAccesKey(), AWSConfig.getSecretKey(), AWSConfig.getTag());
+    }
+
+    public PaapiAsyncClientImpl(final String marketplace, final String accessKeyId, final String secretAccessKey,
+            final String tag) {
+        this(marketplace, PaapiClientImpl.checkArgs(accessKeyId, secretAccessKey, tag));
+    }
+
+    /**
+     * Creates a client sending its requests through the transport shared by all clients created without one.
+     */
+    public PaapiAsyncClientImpl(final String marketplace, final PaapiCredentials credentials) {
+        this(marketplace, credentials, null);
+    }
+
+    /**
+     * @param transport
+     *            transport to send requests with or {@code null} to use the shared {@link AsyncHttpTransport}
+     */
+    public PaapiAsyncClientImpl(final String marketplace, final PaapiCredentials credentials,
+            final PaapiAsyncTransport transport) {
+        PaapiClientImpl.checkArgs(credentials.getAccessKeyId(), credentials.getSecretAccessKey(),
+                credentials.getTag());
+        // Fails fast on an invalid marketplace
+        endpoint = Marketplace.fromString(marketplace).getEndpoint();
+        this.credentials = credentials;
+        this.transport = transport == null ? TransportHolder.TRANSPORT : transport;
+        signer = new RequestSigner(credentials.getSecretAccessKey());
+        rateLimiter = new TokenBucket(credentials.getRequestsPerSecond(), credentials.getBurst());
+        rateController = new AimdRateController(rateLimiter, credentials.getRequestsPerSecond() / 10,
+                credentials.getRequestsPerSecond());
+        final Map<String, CircuitBreaker> breakers = new LinkedHashMap<>();
+        for (final String operation : OPERATIONS) {
+            breakers.put(operation, new CircuitBreaker(marketplace + "/" + operation));
+        }
+        circuitBreakers = Collections.unmodifiableMap(breakers);
+        // Create param holder with default values
+        params = new PaapiParams(true, false);
+
+        LOG.debug("Create PaapiAsyncClient for {} - {}", marketplace, credentials);
+    }
+
+    @Override
+    public CompletableFuture<List<Items>> itemSearch(final ItemSearchRequest request) {
+        final ItemSearch wrapper = new ItemSearch();
+        wrapper.setAWSAccessKeyId(credentials.getAccessKeyId());
+        wrapper.setAssociateTag(credentials.getTag());
+        wrapper.setValidate(params.getValidating());
+        wrapper.setXMLEscaping(params.getEscaping());
+        wrapper.setShared(request);
+        return send("ItemSearch", wrapper, ItemSearchResponse.class).thenApply(r -> checkItems(r.getItems()));
+    }
+
+    @Override
+    public CompletableFuture<List<BrowseNodes>> browseNodeLookup(final BrowseNodeLookupRequest request) {
+        final BrowseNodeLookup wrapper = new BrowseNodeLookup();
+        wrapper.setAWSAccessKeyId(credentials.getAccessKeyId());
+        wrapper.setAssociateTag(credentials.getTag());
+        wrapper.setValidate(params.getValidating());
+        wrapper.setXMLEscaping(params.getEscaping());
+        wrapper.setShared(request);
+        return send("BrowseNodeLookup", wrapper, BrowseNodeLookupResponse.class).thenApply(r -> {
+            if (params.isValidate()) {
+                BrowseNodeRequestHandler.checkForErrors(new Holder<>(r.getBrowseNodes()));
+            }
+            return r.getBrowseNodes();
+        });
+    }
+
+    @Override
+    public CompletableFuture<List<Items>> itemLookup(final ItemLookupRequest request) {
+        final ItemLookup wrapper = new ItemLookup();
+        wrapper.setAWSAccessKeyId(credentials.getAccessKeyId());
+        wrapper.setAssociateTag(credentials.getTag());
+        wrapper.setValidate(params.getValidating());
+        wrapper.setXMLEscaping(params.getEscaping());
+        wrapper.setShared(request);
+        return send("ItemLookup", wrapper, ItemLookupResponse.class).thenApply(r -> checkItems(r.getItems()));
+    }
+
+    @Override
+    public CompletableFuture<List<Items>> similarityLookup(final SimilarityLookupRequest request) {
+        final SimilarityLookup wrapper = new SimilarityLookup();
+        wrapper.setAWSAccessKeyId(credentials.getAccessKeyId());
+        wrapper.setAssociateTag(credentials.getTag());
+        wrapper.setValidate(params.getValidating());
+        wrapper.setXMLEscaping(params.getEscaping());
+        wrapper.setShared(request);
+        return send("SimilarityLookup", wrapper, SimilarityLookupResponse.class)
+                .thenApply(r -> checkItems(r.getItems()));
+    }
+
+    @Override
+    public CompletableFuture<List<Cart>> cartAdd(final CartAddRequest request) {
+        final CartAdd wrapper = new CartAdd();
+        wrapper.setAWSAccessKeyId(credentials.getAccessKeyId());
+        wrapper.setAssociateTag(credentials.getTag());
+        wrapper.setValidate(params.getValidating());
+        wrapper.setXMLEscaping(params.getEscaping());
+        wrapper.setShared(request);
+        return send("CartAdd", wrapper, CartAddResponse.class).thenApply(r -> checkCart(r.getCart()));
+    }
+
+    @Override
+    public CompletableFuture<List<Cart>> cartCreate(final CartCreateRequest request) {
+        final CartCreate wrapper = new CartCreate();
+        wrapper.setAWSAccessKeyId(credentials.getAccessKeyId());
+        wrapper.setAssociateTag(credentials.getTag());
+        wrapper.setValidate(params.getValidating());
+        wrapper.setXMLEscaping(params.getEscaping());
+        wrapper.setShared(request);
+        return send("CartCreate", wrapper, CartCreateResponse.class).thenApply(r -> checkCart(r.getCart()));
+    }
+
+    @Override
+    public CompletableFuture<List<Cart>> cartClear(final CartClearRequest request) {
+        final CartClear wrapper = new CartClear();
+        wrapper.setAWSAccessKeyId(credentials.getAccessKeyId());
+        wrapper.setAssociateTag(credentials.getTag());
+        wrapper.setValidate(params.getValidating());
+        wrapper.setXMLEscaping(params.getEscaping());
+        wrapper.setShared(request);
+        return send("CartClear", wrapper, CartClearResponse.class).thenApply(r -> checkCart(r.getCart()));
+    }
+
+    @Override
+    public CompletableFuture<List<Cart>> cartGet(final CartGetRequest request) {
+        final CartGet wrapper = new CartGet();
+        wrapper.setAWSAccessKeyId(credentials.getAccessKeyId());
+        wrapper.setAssociateTag(credentials.getTag());
+        wrapper.setValidate(params.getValidating());
+        wrapper.setXMLEscaping(params.getEscaping());
+        wrapper.setShared(request);
+        return send("CartGet", wrapper, CartGetResponse.class).thenApply(r -> checkCart(r.getCart()));
+    }
+
+    @Override
+    public CompletableFuture<List<Cart>> cartModify(final CartModifyRequest request) {
+        final CartModify wrapper = new CartModify();
+        wrapper.setAWSAccessKeyId(credentials.getAccessKeyId());
+        wrapper.setAssociateTag(credentials.getTag());
+        wrapper.setValidate(params.getValidating());
+        wrapper.setXMLEscaping(params.getEscaping());
+        wrapper.setShared(request);
+        return send("CartModify", wrapper, CartModifyResponse.class).thenApply(r -> checkCart(r.getCart()));
+    }
+
+    private List<Items> checkItems(final List<Items> items) {
+        if (params.isValidate()) {
+            ItemRequestHandler.checkForErrors(new Holder<>(items));
+        }
+        return items;
+    }
+
+    private List<Cart> checkCart(final List<Cart> cart) {
+        if (params.isValidate()) {
+            CartRequestHandler.checkForErrors(new Holder<>(cart));
+        }
+        return cart;
+    }
+
+    /**
+     * Sends the request once a permit of the rate limiter is available, retrying it on temporary failures. The whole
+     * call fails with a {@link DeadlineExceededException} when the deadline of the calling thread passes.
+     */
+    private <T> CompletableFuture<T> send(final String operation, final Object wrapper,
+            final Class<T> responseType) {
+        final Deadline deadline = Deadline.current();
+        final CircuitBreaker circuitBreaker = circuitBreakers.get(operation);
+        final CompletableFuture<T> result = retryEngine.callAsync(operation,
+                () -> circuitBreaker.callAsync(() -> attempt(operation, wrapper, responseType, deadline)));
+        if (deadline != null) {
+            RetryEngine.delay(deadline.getRemainingNanos()).thenRun(() -> result.completeExceptionally(
+                    new DeadlineExceededException("Deadline exceeded while waiting for " + operation)));
+        }
+        return result;
+    }
+
+    /**
+     * Takes a permit and sends the request once it may be used. Fails with a {@link RateLimitExceededException} if no
+     * permit is available within the maximum wait or the deadline.
+     */
+    private <T> CompletableFuture<T> attempt(final String operation, final Object wrapper, final Class<T> responseType,
+            final Deadline deadline) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final long maxWait = deadline == null ? maxRateLimitWaitNanos
+                : Math.min(maxRateLimitWaitNanos, deadline.getRemainingNanos());
+        final long wait = rateLimiter.acquireLater(maxWait);
+        if (wait < 0) {
+            result.completeExceptionally(new RateLimitExceededException("No permit for " + operation + " within "
+                    + TimeUnit.NANOSECONDS.toMillis(maxWait) + " ms"));
+            return result;
+        }
+        final AtomicBoolean started = new AtomicBoolean();
+        final CompletableFuture<Void> delay = RetryEngine.delay(wait);
+        result.whenComplete((value, failure) -> {
+            if (started.compareAndSet(false, true)) {
+                // Cancelled before the permit was used
+                rateLimiter.refund();
+            }
+        });
+        delay.thenRun(() -> {
+            if (started.compareAndSet(false, true)) {
+                Deadline.with(deadline, () -> invoke(operation, wrapper, responseType, result));
+            }
+        });
+        return result;
+    }
+
+    private <T> Void invoke(final String operation, final Object wrapper, final Class<T> responseType,
+            final CompletableFuture<T> result) {
+        final EnvelopeBuffer envelope = EnvelopeBuffer.get();
+        final CompletableFuture<TransportResponse> response;
+        try {
+            SoapCodec.encode(wrapper, operation, signer, envelope);
+            response = transport.sendAsync(endpoint, SOAP_ACTION_PREFIX + operation, envelope.array(), 0,
+                    envelope.size());
+        } catch (final RuntimeException e) {
+            result.completeExceptionally(e);
+            return null;
+        }
+        result.whenComplete((value, failure) -> response.cancel(true));
+        response.whenComplete((r, failure) -> {
+            if (failure != null) {
+                // The buffer may still be read by an aborted request, so it is not reused
+                complete(result, null, failure instanceof IOException
+                        ? new WebServiceException(operation + " failed: " + failure.getMessage(), failure)
+                        : failure);
+                return;
+            }
+            envelope.release();
+            try (TransportResponse closed = r) {
+                complete(result, SoapCodec.decode(closed, responseType), null);
+            } catch (final RuntimeException | IOException e) {
+                complete(result, null, e);
+            }
+        });
+        return null;
+    }
+
+    /**
+     * Completes the attempt and feeds its outcome to the adaptive rate.
+     */
+    private <T> void complete(final CompletableFuture<T> result, final T value, final Throwable failure) {
+        if (failure == null) {
+            rateController.onSuccess();
+            result.complete(value);
+            return;
+        }
+        if (failure instanceof RuntimeException && CredentialPool.isThrottled((RuntimeException) failure)) {
+            rateController.onThrottled();
+        }
+        result.completeExceptionally(failure);
+    }
+
+    public int getRetryMax() {
+        return retryEngine.getMaxRetries();
+    }
+
+    public void setRetryMax(final int retryMax) {
+        retryEngine.setMaxRetries(retryMax);
+    }
+
+    public long getRetryIntervallMillis() {
+        return retryEngine.getBaseDelayMillis();
+    }
+
+    public void setRetryIntervallMillis(final long retryIntervallMillis) {
+        retryEngine.setBaseDelayMillis(retryIntervallMillis);
+    }
+
+    /**
+     * Returns the rate limiter of the access key.
+     */
+    public TokenBucket getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Returns the controller adjusting the rate to throttling, disabled by default.
+     */
+    public AimdRateController getRateController() {
+        return rateController;
+    }
+
+    public long getMaxRateLimitWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxRateLimitWaitNanos);
+    }
+
+    /**
+     * Sets how far ahead a request may reserve a permit. Requests which would have to wait longer fail with a
+     * {@link RateLimitExceededException} instead of piling up.
+     */
+    public void setMaxRateLimitWaitMillis(final long maxRateLimitWaitMillis) {
+        if (maxRateLimitWaitMillis < 0) {
+            throw new IllegalArgumentException("maxRateLimitWaitMillis must not be negative.");
+        }
+        maxRateLimitWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxRateLimitWaitMillis);
+    }
+
+    /**
+     * Returns the circuit breakers by operation.
+     */
+    public Map<String, CircuitBreaker> getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    public boolean isValidating() {
+        return params.isValidate();
+    }
+
+    public void setValidating(final boolean validating) {
+        params.setValidate(validating);
+    }
+
+    public boolean isEscaping() {
+        return params.isEscaping();
+    }
+
+    public void setEscaping(final boolean escaping) {
+        params.setEscaping(escaping);
+    }
+}
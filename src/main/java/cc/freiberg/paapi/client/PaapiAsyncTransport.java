@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * SPI for the non-blocking HTTP transport underneath the {@link PaapiAsyncClientImpl}. Implementations must be
+ * thread-safe and must not block the calling thread while the request is in flight.
+ */
+public interface PaapiAsyncTransport extends Closeable {
+
+    /**
+     * Posts a SOAP request to the given endpoint. The returned future completes with the response once it was received
+     * completely, cancelling it aborts the request. The body buffer must not be changed until the future completed.
+     *
+     * @param endpoint
+     *            the endpoint URL of the marketplace
+     * @param soapAction
+     *            the value of the SOAPAction header
+     * @param body
+     *            buffer holding the serialized SOAP envelope
+     * @param offset
+     *            start of the envelope in the buffer
+     * @param length
+     *            length of the envelope
+     */
+    CompletableFuture<TransportResponse> sendAsync(String endpoint, String soapAction, byte[] body, int offset,
+            int length);
+}
@@ -21,6 +21,7 @@
  */
 package cc.freiberg.paapi.client;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import com.ecs.client.jax.BrowseNodeLookupRequest;
@@ -44,6 +45,34 @@ public interface PaapiClient {
 
     public List<Items> itemLookup(final ItemLookupRequest request);
 
+    /**
+     * Sends the searches two per call, e.g. two pages of the same search. Returns one {@link Items} per request in the
+     * order of the requests. A request Amazon rejected is returned with its errors in {@code Items.getRequest()}
+     * instead of failing the other request of its call. The default implementation sends the searches one by one, a
+     * rejected search fails like {@link #itemSearch(ItemSearchRequest)}.
+     */
+    public default List<Items> itemSearchBatch(final List<ItemSearchRequest> requests) {
+        final List<Items> result = new ArrayList<>(requests.size());
+        for (final ItemSearchRequest request : requests) {
+            result.addAll(itemSearch(request));
+        }
+        return result;
+    }
+
+    /**
+     * Sends the lookups two per call, e.g. the same items with different response groups. Returns one {@link Items}
+     * per request in the order of the requests. A request Amazon rejected is returned with its errors in
+     * {@code Items.getRequest()} instead of failing the other request of its call. The default implementation sends
+     * the lookups one by one, a rejected lookup fails like {@link #itemLookup(ItemLookupRequest)}.
+     */
+    public default List<Items> itemLookupBatch(final List<ItemLookupRequest> requests) {
+        final List<Items> result = new ArrayList<>(requests.size());
+        for (final ItemLookupRequest request : requests) {
+            result.addAll(itemLookup(request));
+        }
+        return result;
+    }
+
     public List<Items> similarityLookup(final SimilarityLookupRequest request);
 
     public List<Cart> cartAdd(final CartAddRequest request);
@@ -21,15 +21,22 @@
  */
 package cc.freiberg.paapi.client;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import javax.xml.ws.WebServiceException;
 
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.ecs.client.jax.AWSECommerceService;
 import com.ecs.client.jax.AWSECommerceServicePortType;
 import com.ecs.client.jax.BrowseNodeLookupRequest;
 import com.ecs.client.jax.BrowseNodes;
@@ -39,6 +46,7 @@ import com.ecs.client.jax.CartClearRequest;
 import com.ecs.client.jax.CartCreateRequest;
 import com.ecs.client.jax.CartGetRequest;
 import com.ecs.client.jax.CartModifyRequest;
+import com.ecs.client.jax.Item;
 import com.ecs.client.jax.ItemLookupRequest;
 import com.ecs.client.jax.ItemSearchRequest;
 import com.ecs.client.jax.Items;
@@ -48,14 +56,30 @@ public class PaapiClientImpl implements PaapiClient {
 
     private static final Logger LOG = LoggerFactory.getLogger(PaapiClientImpl.class);
 
-    private int retryMax = 3;
-    private long retryIntervallMillis = 1000;
+    // Amazon accepts at most two requests besides the shared parameters per call
+    private static final int MAX_REQUESTS_PER_BATCH = 2;
 
-    private final PaapiParams params;
+    public static final int DEFAULT_BULK_PARALLELISM = 4;
+
+    private static final List<String> OPERATIONS = Arrays.asList("ItemSearch", "BrowseNodeLookup", "ItemLookup",
+            "SimilarityLookup", "CartAdd", "CartCreate", "CartClear", "CartGet", "CartModify");
 
-    private final ItemRequestHandler itemHandler;
-    private final BrowseNodeRequestHandler browseNodeHandler;
-    private final CartRequestHandler cartHandler;
+    private final RetryEngine retryEngine = new RetryEngine();
+    private volatile int bulkParallelism = DEFAULT_BULK_PARALLELISM;
+
+    private final PaapiParams params;
+    private final CompressionMetrics compressionMetrics = new CompressionMetrics();
+
+    private final String marketplace;
+    private final CredentialPool credentialPool;
+    private final Map<String, CircuitBreaker> circuitBreakers;
+    private final StaleCache staleCache = new StaleCache();
+    private final Bulkhead catalogBulkhead = new Bulkhead("catalog", PortPool.DEFAULT_MAX_SIZE,
+            Bulkhead.DEFAULT_MAX_QUEUED);
+    private final Bulkhead cartBulkhead = new Bulkhead("cart", PortPool.DEFAULT_MAX_SIZE, Bulkhead.DEFAULT_MAX_QUEUED);
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final RequestHedger hedger = new RequestHedger();
+    private final ItemLookupBatcher itemLookupBatcher = new ItemLookupBatcher(this::sendItemLookup);
 
     public PaapiClientImpl() {
         this(AWSConfig.getMarketplace(), AWSConfig.getAccesKey(), AWSConfig.getSecretKey(), AWSConfig.getTag());
@@ -63,55 +87,73 @@ public class PaapiClientImpl implements PaapiClient {
 
     public PaapiClientImpl(final String marketplace, final String accessKeyId, final String secretAccessKey,
             final String tag) {
-        checkArgs(marketplace, accessKeyId, secretAccessKey, tag);
-        final AWSECommerceService service = new AWSECommerceService();
-        service.setHandlerResolver(new AwsHandlerResolver(secretAccessKey));
-        final AWSECommerceServicePortType port = getPortForMarketplace(marketplace, service);
+        this(marketplace, accessKeyId, secretAccessKey, tag, null);
+    }
+
+    /**
+     * Creates a client which sends its requests through the given transport instead of the JAX-WS runtime. If the
+     * transport is {@code null} the JAX-WS runtime is used.
+     */
+    public PaapiClientImpl(final String marketplace, final String accessKeyId, final String secretAccessKey,
+            final String tag, final PaapiTransport transport) {
+        this(marketplace, Collections.singletonList(checkArgs(accessKeyId, secretAccessKey, tag)), transport);
+    }
+
+    /**
+     * Creates a client which spreads its requests over several access keys. Every request is sent with the key that
+     * has the most of its quota left, keys returning throttling errors are avoided for a while.
+     *
+     * @param transport
+     *            transport to send requests with or {@code null} to use the JAX-WS runtime
+     */
+    public PaapiClientImpl(final String marketplace, final List<PaapiCredentials> credentials,
+            final PaapiTransport transport) {
+        checkNullOrEmpty(marketplace, "marketplace");
+        this.marketplace = marketplace;
+        final List<CredentialLane> lanes = new ArrayList<>();
+        for (final PaapiCredentials c : credentials) {
+            checkArgs(c.getAccessKeyId(), c.getSecretAccessKey(), c.getTag());
+            final Supplier<AWSECommerceServicePortType> portFactory = createPortFactory(marketplace,
+                    c.getSecretAccessKey(), transport, compressionMetrics);
+            final PortPool portPool = new PortPool(marketplace, portFactory, PortPool.DEFAULT_MAX_SIZE);
+            // Create the first port eagerly, fails fast on an invalid marketplace
+            portPool.release(portPool.borrow());
+            final PortPool cartPortPool = new PortPool(marketplace, portFactory, PortPool.DEFAULT_MAX_SIZE);
+            lanes.add(new CredentialLane(c, portPool, cartPortPool));
+        }
+        credentialPool = new CredentialPool(lanes);
+        final Map<String, CircuitBreaker> breakers = new LinkedHashMap<>();
+        for (final String operation : OPERATIONS) {
+            breakers.put(operation, new CircuitBreaker(marketplace + "/" + operation));
+        }
+        circuitBreakers = Collections.unmodifiableMap(breakers);
+        setBulkheadLimits(PortPool.DEFAULT_MAX_SIZE);
+        // Cart operations go first when the quota is short, unless the caller chose a priority
+        cartBulkhead.setPriority(RequestPriority.INTERACTIVE);
         // Create param holder with default values
         params = new PaapiParams(true, false);
-        // Create handlers
-        itemHandler = new ItemRequestHandler(null, accessKeyId, tag, port);
-        browseNodeHandler = new BrowseNodeRequestHandler(null, accessKeyId, tag, port);
-        cartHandler = new CartRequestHandler(null, accessKeyId, tag, port);
-
-        LOG.debug("Create PaapiClient for {} - {} - {}", marketplace, accessKeyId, tag);
-    }
-
-    private static AWSECommerceServicePortType getPortForMarketplace(final String marketplace,
-            final AWSECommerceService service) {
-        switch (marketplace.toUpperCase()) {
-        case "CA":
-            return service.getAWSECommerceServicePortCA();
-        case "CN":
-            return service.getAWSECommerceServicePortCN();
-        case "DE":
-            return service.getAWSECommerceServicePortDE();
-        case "ES":
-            return service.getAWSECommerceServicePortES();
-        case "FR":
-            return service.getAWSECommerceServicePortFR();
-        case "IN":
-            return service.getAWSECommerceServicePortIN();
-        case "IT":
-            return service.getAWSECommerceServicePortIT();
-        case "JP":
-            return service.getAWSECommerceServicePortJP();
-        case "UK":
-            return service.getAWSECommerceServicePortUK();
-        case "US":
-            return service.getAWSECommerceServicePortUS();
-        default:
-            throw new IllegalArgumentException(marketplace
-                    + " is not a valid marketplace identifier. Possible values are [CA,CN,DE,ES,FR,IN,IT,JP,UK,US]");
+
+        LOG.debug("Create PaapiClient for {} - {}", marketplace, credentials);
+    }
+
+    private static Supplier<AWSECommerceServicePortType> createPortFactory(final String marketplace,
+            final String secretAccessKey, final PaapiTransport transport, final CompressionMetrics compressionMetrics) {
+        if (transport == null) {
+            return () -> PaapiService.createPort(marketplace, secretAccessKey);
         }
+        final Marketplace endpoint = Marketplace.fromString(marketplace);
+        final RequestSigner signer = new RequestSigner(secretAccessKey);
+        // Templates are shared by all ports of the client
+        final ItemLookupTemplateEncoder itemLookupEncoder = new ItemLookupTemplateEncoder();
+        return () -> new TransportPort(endpoint, transport, signer, itemLookupEncoder, compressionMetrics);
     }
 
-    private static void checkArgs(final String marketplace, final String accessKeyId, final String secretAccessKeyId,
+    static PaapiCredentials checkArgs(final String accessKeyId, final String secretAccessKeyId,
             final String tag) throws IllegalArgumentException {
-        checkNullOrEmpty(marketplace, "marketplace");
         checkNullOrEmpty(accessKeyId, "accessKeyId");
         checkNullOrEmpty(secretAccessKeyId, "secretAccessKeyId");
         checkNullOrEmpty(tag, "tag");
+        return new PaapiCredentials(accessKeyId, secretAccessKeyId, tag);
     }
 
     private static void checkNullOrEmpty(final String string, final String name) throws IllegalArgumentException {
@@ -125,141 +167,528 @@ public class PaapiClientImpl implements PaapiClient {
 
     @Override
     public List<Items> itemSearch(final ItemSearchRequest request) {
-        return callWithRetry(new WebServiceWrapper<List<Items>>() {
-            @Override
-            public List<Items> call() throws WebServiceException {
-                return itemHandler.itemSearch(request, params);
-            }
-        });
+        return callRead("ItemSearch", request,
+                () -> callWithRetry("ItemSearch", new WebServiceWrapper<List<Items>>() {
+                    @Override
+                    public List<Items> call() throws WebServiceException {
+                        return credentialPool.call(lane -> lane.getItemHandler().itemSearch(request, params));
+                    }
+                }));
     }
 
     @Override
     public List<BrowseNodes> browseNodeLookup(final BrowseNodeLookupRequest request) {
-        return callWithRetry(new WebServiceWrapper<List<BrowseNodes>>() {
-            @Override
-            public List<BrowseNodes> call() throws WebServiceException {
-                return browseNodeHandler.browseNodeLookup(request, params);
-            }
-        });
+        return callRead("BrowseNodeLookup", request,
+                () -> callWithRetry("BrowseNodeLookup", new WebServiceWrapper<List<BrowseNodes>>() {
+                    @Override
+                    public List<BrowseNodes> call() throws WebServiceException {
+                        return credentialPool
+                                .call(lane -> lane.getBrowseNodeHandler().browseNodeLookup(request, params));
+                    }
+                }));
     }
 
     @Override
     public List<Items> itemLookup(final ItemLookupRequest request) {
-        return callWithRetry(new WebServiceWrapper<List<Items>>() {
+        return callRead("ItemLookup", request, () -> itemLookupBatcher.supports(request)
+                ? itemLookupBatcher.lookup(request)
+                : sendItemLookup(request));
+    }
+
+    private List<Items> sendItemLookup(final ItemLookupRequest request) {
+        return callWithRetry("ItemLookup", new WebServiceWrapper<List<Items>>() {
             @Override
             public List<Items> call() throws WebServiceException {
-                return itemHandler.itemLookup(request, params);
+                return credentialPool.call(lane -> lane.getItemHandler().itemLookup(request, params));
             }
         });
     }
 
+    @Override
+    public List<Items> itemSearchBatch(final List<ItemSearchRequest> requests) {
+        final List<Items> result = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i += MAX_REQUESTS_PER_BATCH) {
+            final List<ItemSearchRequest> batch = requests.subList(i,
+                    Math.min(i + MAX_REQUESTS_PER_BATCH, requests.size()));
+            result.addAll(callWithRetry("ItemSearch", new WebServiceWrapper<List<Items>>() {
+                @Override
+                public List<Items> call() throws WebServiceException {
+                    return credentialPool.call(lane -> lane.getItemHandler().itemSearch(null, batch, params));
+                }
+            }));
+        }
+        return result;
+    }
+
+    @Override
+    public List<Items> itemLookupBatch(final List<ItemLookupRequest> requests) {
+        final List<Items> result = new ArrayList<>(requests.size());
+        for (int i = 0; i < requests.size(); i += MAX_REQUESTS_PER_BATCH) {
+            final List<ItemLookupRequest> batch = requests.subList(i,
+                    Math.min(i + MAX_REQUESTS_PER_BATCH, requests.size()));
+            result.addAll(callWithRetry("ItemLookup", new WebServiceWrapper<List<Items>>() {
+                @Override
+                public List<Items> call() throws WebServiceException {
+                    return credentialPool.call(lane -> lane.getItemHandler().itemLookup(null, batch, params));
+                }
+            }));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a publisher of the items of all pages of a search, starting with the first page. Pages are fetched as
+     * the subscriber requests items, at most one page ahead.
+     */
+    public Publisher<Item> itemSearchPages(final ItemSearchRequest request) {
+        return new ItemSearchPublisher(this::itemSearch, request);
+    }
+
+    /**
+     * Looks up all ASINs in lookups of ten ASINs, running {@link #getBulkParallelism()} lookups in parallel.
+     */
+    public BulkLookupResult lookupAll(final Collection<String> asins, final Collection<String> responseGroups) {
+        return lookupAll(asins, responseGroups, null);
+    }
+
+    /**
+     * Looks up all ASINs in lookups of ten ASINs, running {@link #getBulkParallelism()} lookups in parallel. The
+     * callback gets the result of every lookup as soon as it completed, it may be called from several threads at once.
+     */
+    public BulkLookupResult lookupAll(final Collection<String> asins, final Collection<String> responseGroups,
+            final Consumer<BulkLookupResult> callback) {
+        return new BulkLookup(this::itemLookup, responseGroups, callback).run(asins, bulkParallelism);
+    }
+
     @Override
     public List<Items> similarityLookup(final SimilarityLookupRequest request) {
-        return callWithRetry(new WebServiceWrapper<List<Items>>() {
-            @Override
-            public List<Items> call() throws WebServiceException {
-                return itemHandler.similarityLookup(request, params);
-            }
-        });
+        return callRead("SimilarityLookup", request,
+                () -> callWithRetry("SimilarityLookup", new WebServiceWrapper<List<Items>>() {
+                    @Override
+                    public List<Items> call() throws WebServiceException {
+                        return credentialPool.call(lane -> lane.getItemHandler().similarityLookup(request, params));
+                    }
+                }));
     }
 
     @Override
     public List<Cart> cartAdd(final CartAddRequest request) {
-        return callWithRetry(new WebServiceWrapper<List<Cart>>() {
+        return callWithRetry("CartAdd", new WebServiceWrapper<List<Cart>>() {
             @Override
             public List<Cart> call() throws WebServiceException {
-                return cartHandler.cartAdd(request, params);
+                return credentialPool.call(lane -> lane.getCartHandler().cartAdd(request, params));
             }
         });
-
     }
 
     @Override
     public List<Cart> cartCreate(final CartCreateRequest request) {
-        return callWithRetry(new WebServiceWrapper<List<Cart>>() {
+        return callWithRetry("CartCreate", new WebServiceWrapper<List<Cart>>() {
             @Override
             public List<Cart> call() throws WebServiceException {
-                return cartHandler.cartCreate(request, params);
+                return credentialPool.call(lane -> lane.getCartHandler().cartCreate(request, params));
             }
         });
     }
 
     @Override
     public List<Cart> cartClear(final CartClearRequest request) {
-        return callWithRetry(new WebServiceWrapper<List<Cart>>() {
+        return callWithRetry("CartClear", new WebServiceWrapper<List<Cart>>() {
             @Override
             public List<Cart> call() throws WebServiceException {
-                return cartHandler.cartClear(request, params);
+                return credentialPool.call(lane -> lane.getCartHandler().cartClear(request, params));
             }
         });
     }
 
     @Override
     public List<Cart> cartGet(final CartGetRequest request) {
-        return callWithRetry(new WebServiceWrapper<List<Cart>>() {
+        return callWithRetry("CartGet", new WebServiceWrapper<List<Cart>>() {
             @Override
             public List<Cart> call() throws WebServiceException {
-                return cartHandler.cartGet(request, params);
+                return credentialPool.call(lane -> lane.getCartHandler().cartGet(request, params));
             }
         });
     }
 
     @Override
     public List<Cart> cartModify(final CartModifyRequest request) {
-        return callWithRetry(new WebServiceWrapper<List<Cart>>() {
+        return callWithRetry("CartModify", new WebServiceWrapper<List<Cart>>() {
             @Override
             public List<Cart> call() throws WebServiceException {
-                return cartHandler.cartModify(request, params);
+                return credentialPool.call(lane -> lane.getCartHandler().cartModify(request, params));
             }
         });
     }
 
-    <T> T callWithRetry(final WebServiceWrapper<T> wrapper) throws WebServiceException {
-        int retry = 0;
-        final boolean completed = false;
-        T result = null;
-        while (!completed) {
+    /**
+     * Sends a read-only request once for all identical requests in flight, hedging it if it is slow and serving the
+     * last known result while the circuit breaker of the operation is open.
+     */
+    private <T> T callRead(final String operation, final Object request, final Supplier<T> call) {
+        return singleFlight.call(operation, marketplace, request, () -> {
+            if (staleCache.getMaxSize() == 0) {
+                return hedger.call(operation, call);
+            }
+            final List<Object> key = SingleFlight.key(operation, marketplace, request);
             try {
-                result = wrapper.call();
-                break;
-            } catch (final WebServiceException e) {
-                LOG.warn("Product Advertising API currently unavailable: {}", e.getMessage());
-                // Only retry on 503 errors
-                if (e.getMessage().contains("503")) {
-                    if (retry < retryMax) {
-                        LOG.info("Running retry attempt {}/{}", ++retry, retryMax);
-                    } else {
-                        break;
-                    }
-                    try {
-                        LOG.info("Sleeping {} ms", retryIntervallMillis * retry);
-                        TimeUnit.MILLISECONDS.sleep(retryIntervallMillis * retry);
-                    } catch (final InterruptedException ie) {
-                        break;
-                    }
-                } else {
-                    // Not retry-able
+                final T result = hedger.call(operation, call);
+                staleCache.put(key, result);
+                return result;
+            } catch (final CircuitBreakerOpenException e) {
+                final T stale = staleCache.get(key);
+                if (stale == null) {
                     throw e;
                 }
+                LOG.debug("Serving last known result: {}", e.getMessage());
+                return stale;
             }
+        });
+    }
+
+    <T> T callWithRetry(final String operation, final WebServiceWrapper<T> wrapper) throws WebServiceException {
+        final CircuitBreaker circuitBreaker = circuitBreakers.get(operation);
+        final Bulkhead bulkhead = operation.startsWith("Cart") ? cartBulkhead : catalogBulkhead;
+        return retryEngine.call(operation, () -> bulkhead.call(() -> circuitBreaker.call(wrapper)));
+    }
+
+    /**
+     * Runs the call, running the fallback instead if the circuit breaker of the operation is open.
+     */
+    public <T> T withFallback(final Supplier<T> call, final Supplier<T> fallback) {
+        try {
+            return call.get();
+        } catch (final CircuitBreakerOpenException e) {
+            LOG.debug("Using fallback: {}", e.getMessage());
+            return fallback.get();
         }
-        return result;
+    }
+
+    /**
+     * Returns the circuit breakers by operation.
+     */
+    public Map<String, CircuitBreaker> getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    /**
+     * Registers a listener for state transitions of all circuit breakers.
+     */
+    public void addCircuitBreakerListener(final CircuitBreaker.Listener listener) {
+        circuitBreakers.values().forEach(c -> c.addListener(listener));
+    }
+
+    public int getStaleCacheSize() {
+        return staleCache.getMaxSize();
+    }
+
+    /**
+     * Sets the number of last known lookup and search results kept to be served while a circuit breaker is open. The
+     * default 0 serves no stale results.
+     */
+    public void setStaleCacheSize(final int staleCacheSize) {
+        staleCache.setMaxSize(staleCacheSize);
     }
 
     public int getRetryMax() {
-        return retryMax;
+        return retryEngine.getMaxRetries();
     }
 
     public void setRetryMax(final int retryMax) {
-        this.retryMax = retryMax;
+        retryEngine.setMaxRetries(retryMax);
     }
 
+    /**
+     * Returns the minimum time between attempts, the actual time grows exponentially with random jitter.
+     */
     public long getRetryIntervallMillis() {
-        return retryIntervallMillis;
+        return retryEngine.getBaseDelayMillis();
     }
 
     public void setRetryIntervallMillis(final long retryIntervallMillis) {
-        this.retryIntervallMillis = retryIntervallMillis;
+        retryEngine.setBaseDelayMillis(retryIntervallMillis);
+    }
+
+    public long getRetryMaxIntervallMillis() {
+        return retryEngine.getMaxDelayMillis();
+    }
+
+    public void setRetryMaxIntervallMillis(final long retryMaxIntervallMillis) {
+        retryEngine.setMaxDelayMillis(retryMaxIntervallMillis);
+    }
+
+    public double getRetryBudgetRatio() {
+        return retryEngine.getBudgetRatio();
+    }
+
+    /**
+     * Sets the number of retries allowed per call over all calls of this client, e.g. 0.2 allows one retry for every
+     * five calls.
+     */
+    public void setRetryBudgetRatio(final double retryBudgetRatio) {
+        retryEngine.setBudgetRatio(retryBudgetRatio);
+    }
+
+    /**
+     * Returns the number of retries sent.
+     */
+    public long getRetries() {
+        return retryEngine.getRetries();
+    }
+
+    /**
+     * Returns the number of failures which were not retried because the retry budget was used up.
+     */
+    public long getRetryBudgetExhausted() {
+        return retryEngine.getBudgetExhausted();
+    }
+
+    public int getPortPoolSize() {
+        return credentialPool.getLanes().get(0).getPortPool().getMaxSize();
+    }
+
+    /**
+     * Sets the maximum number of ports per access key and operation family, i.e. the maximum number of concurrent
+     * catalog and cart requests per key.
+     */
+    public void setPortPoolSize(final int portPoolSize) {
+        for (final CredentialLane lane : credentialPool.getLanes()) {
+            lane.getPortPool().setMaxSize(portPoolSize);
+            lane.getCartPortPool().setMaxSize(portPoolSize);
+        }
+        setBulkheadLimits(portPoolSize);
+    }
+
+    /**
+     * Lets as many requests run concurrently as there are ports.
+     */
+    private void setBulkheadLimits(final int portPoolSize) {
+        final int lanes = credentialPool.getLanes().size();
+        catalogBulkhead.setLimits(portPoolSize * lanes, catalogBulkhead.getMaxQueued());
+        cartBulkhead.setLimits(portPoolSize * lanes, cartBulkhead.getMaxQueued());
+    }
+
+    /**
+     * Returns the bulkhead of the lookup and search operations.
+     */
+    public Bulkhead getCatalogBulkhead() {
+        return catalogBulkhead;
+    }
+
+    /**
+     * Returns the bulkhead of the cart operations. Its requests are sent with {@link RequestPriority#INTERACTIVE} by
+     * default, which reserves the quota for them.
+     */
+    public Bulkhead getCartBulkhead() {
+        return cartBulkhead;
+    }
+
+    /**
+     * Returns the compressed and uncompressed response sizes per operation. Only requests sent through a
+     * {@link PaapiTransport} are recorded.
+     */
+    public CompressionMetrics getCompressionMetrics() {
+        return compressionMetrics;
+    }
+
+    /**
+     * Returns the rate limiters per access key, which also provide the number of granted, waited for and rejected
+     * permits.
+     */
+    public Map<String, TokenBucket> getRateLimiters() {
+        final Map<String, TokenBucket> rateLimiters = new LinkedHashMap<>();
+        for (final CredentialLane lane : credentialPool.getLanes()) {
+            rateLimiters.put(lane.getCredentials().getAccessKeyId(), lane.getRateLimiter());
+        }
+        return rateLimiters;
+    }
+
+    /**
+     * Returns the controllers adapting the rate per access key. They are disabled by default.
+     */
+    public Map<String, AimdRateController> getRateControllers() {
+        final Map<String, AimdRateController> rateControllers = new LinkedHashMap<>();
+        for (final CredentialLane lane : credentialPool.getLanes()) {
+            rateControllers.put(lane.getCredentials().getAccessKeyId(), lane.getRateController());
+        }
+        return rateControllers;
+    }
+
+    /**
+     * Enables or disables adapting the rate of all access keys to 503 and RequestThrottled responses. When enabled the
+     * rate is kept between the bounds of the controllers, by default a tenth of the quota and the quota. When disabled
+     * every key gets back the rate of its credentials.
+     */
+    public void setAdaptiveRate(final boolean enabled) {
+        for (final CredentialLane lane : credentialPool.getLanes()) {
+            lane.getRateController().setEnabled(enabled);
+            if (!enabled) {
+                lane.getRateLimiter().setRate(lane.getCredentials().getRequestsPerSecond());
+            }
+        }
+    }
+
+    /**
+     * Enables adapting the rate of all access keys and keeps it between the given bounds. Disabling ignores the bounds
+     * and works like {@link #setAdaptiveRate(boolean)}.
+     */
+    public void setAdaptiveRate(final boolean enabled, final double minRequestsPerSecond,
+            final double maxRequestsPerSecond) {
+        if (!enabled) {
+            setAdaptiveRate(false);
+            return;
+        }
+        for (final CredentialLane lane : credentialPool.getLanes()) {
+            lane.getRateController().setBounds(minRequestsPerSecond, maxRequestsPerSecond);
+            lane.getRateController().setEnabled(true);
+        }
+    }
+
+    /**
+     * Returns the requests per second currently allowed over all access keys.
+     */
+    public double getRequestRate() {
+        double rate = 0;
+        for (final CredentialLane lane : credentialPool.getLanes()) {
+            rate += lane.getRateLimiter().getRate();
+        }
+        return rate;
+    }
+
+    /**
+     * Returns the scheduler sharing the quota between priority classes, which also reports the queue wait per class.
+     * The priority of a request is set with {@link RequestScheduler#withPriority(RequestPriority, Supplier)}.
+     */
+    public RequestScheduler getScheduler() {
+        return credentialPool.getScheduler();
+    }
+
+    /**
+     * Returns the number of calls which were not sent but got the result of an identical request in flight.
+     */
+    public long getCoalescedCalls() {
+        return singleFlight.getCoalesced();
+    }
+
+    public boolean isCoalescing() {
+        return singleFlight.isEnabled();
+    }
+
+    /**
+     * Sets whether identical lookups and searches in flight are sent only once (default). Coalesced callers share the
+     * same result objects, which must therefore not be modified.
+     */
+    public void setCoalescing(final boolean coalescing) {
+        singleFlight.setEnabled(coalescing);
+    }
+
+    public boolean isItemLookupBatching() {
+        return itemLookupBatcher.isEnabled();
+    }
+
+    /**
+     * Enables packing concurrent lookups of single ASINs into lookups of up to ten ASINs. Disabled by default.
+     */
+    public void setItemLookupBatching(final boolean batching) {
+        itemLookupBatcher.setEnabled(batching);
+    }
+
+    public long getItemLookupBatchWindowMillis() {
+        return itemLookupBatcher.getMaxWindowMillis();
+    }
+
+    /**
+     * Sets the longest time a lookup waits for further lookups to batch with. The actual wait is shorter when lookups
+     * arrive quickly and zero when they arrive slower than that.
+     */
+    public void setItemLookupBatchWindowMillis(final long windowMillis) {
+        itemLookupBatcher.setMaxWindowMillis(windowMillis);
+    }
+
+    /**
+     * Returns the number of single ASIN lookups sent as part of a batch.
+     */
+    public long getBatchedItemLookups() {
+        return itemLookupBatcher.getBatchedLookups();
+    }
+
+    public boolean isHedging() {
+        return hedger.isEnabled();
+    }
+
+    /**
+     * Enables hedging of lookups and searches: if a request takes longer than the hedging percentile of the recent
+     * latencies of its operation a second copy is sent and the first response is used. Disabled by default, cart
+     * operations are never hedged.
+     */
+    public void setHedging(final boolean hedging) {
+        hedger.setEnabled(hedging);
+    }
+
+    public double getHedgingPercentile() {
+        return hedger.getPercentile();
+    }
+
+    public void setHedgingPercentile(final double percentile) {
+        hedger.setPercentile(percentile);
+    }
+
+    public double getMaxHedgeRatio() {
+        return hedger.getMaxHedgeRatio();
+    }
+
+    /**
+     * Sets the maximum number of hedges as a fraction of all lookups and searches, 0.05 by default.
+     */
+    public void setMaxHedgeRatio(final double maxHedgeRatio) {
+        hedger.setMaxHedgeRatio(maxHedgeRatio);
+    }
+
+    /**
+     * Returns the number of hedges sent.
+     */
+    public long getHedges() {
+        return hedger.getHedges();
+    }
+
+    /**
+     * Returns the number of hedges which answered before the original request.
+     */
+    public long getHedgeWins() {
+        return hedger.getHedgeWins();
+    }
+
+    /**
+     * Returns the number of requests dropped before they were sent because their {@link Deadline} could not be met.
+     */
+    public long getShedRequests() {
+        return credentialPool.getShed();
+    }
+
+    public int getBulkParallelism() {
+        return bulkParallelism;
+    }
+
+    /**
+     * Sets the number of lookups {@link #lookupAll(Collection, Collection)} runs in parallel.
+     */
+    public void setBulkParallelism(final int bulkParallelism) {
+        if (bulkParallelism < 1) {
+            throw new IllegalArgumentException("bulkParallelism must be at least 1.");
+        }
+        this.bulkParallelism = bulkParallelism;
+    }
+
+    public boolean isBlockingRateLimit() {
+        return credentialPool.isBlocking();
+    }
+
+    /**
+     * Sets whether requests wait for a permit of the rate limiter (default) or fail immediately with a
+     * {@link RateLimitExceededException} if the quota is exceeded.
+     */
+    public void setBlockingRateLimit(final boolean blocking) {
+        credentialPool.setBlocking(blocking);
     }
 
     public boolean isValidating() {
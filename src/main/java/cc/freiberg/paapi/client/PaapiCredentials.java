@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+/**
+ * Access key, secret key and associate tag used to sign and send requests. The requests per second are the quota
+ * Amazon granted for this access key, the burst is the number of requests which may be sent at once after the key was
+ * idle. Credentials without requests per second are not rate limited.
+ */
+public class PaapiCredentials {
+
+    public static final double UNLIMITED = Double.POSITIVE_INFINITY;
+    public static final int DEFAULT_BURST = 1;
+
+    private final String accessKeyId;
+    private final String secretAccessKey;
+    private final String tag;
+    private final double requestsPerSecond;
+    private final int burst;
+
+    public PaapiCredentials(final String accessKeyId, final String secretAccessKey, final String tag) {
+        this(accessKeyId, secretAccessKey, tag, UNLIMITED);
+    }
+
+    public PaapiCredentials(final String accessKeyId, final String secretAccessKey, final String tag,
+            final double requestsPerSecond) {
+        this(accessKeyId, secretAccessKey, tag, requestsPerSecond, DEFAULT_BURST);
+    }
+
+    public PaapiCredentials(final String accessKeyId, final String secretAccessKey, final String tag,
+            final double requestsPerSecond, final int burst) {
+        if (!(requestsPerSecond > 0)) {
+            throw new IllegalArgumentException("requestsPerSecond must be positive.");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1.");
+        }
+        this.accessKeyId = accessKeyId;
+        this.secretAccessKey = secretAccessKey;
+        this.tag = tag;
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+    }
+
+    public String getAccessKeyId() {
+        return accessKeyId;
+    }
+
+    public String getSecretAccessKey() {
+        return secretAccessKey;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    @Override
+    public String toString() {
+        // Never print the secret key
+        return "PaapiCredentials [accessKeyId=" + accessKeyId + ", tag=" + tag + ", requestsPerSecond="
+                + requestsPerSecond + ", burst=" + burst + "]";
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.ws.Binding;
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.handler.Handler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ecs.client.jax.AWSECommerceService;
+import com.ecs.client.jax.AWSECommerceServicePortType;
+
+/**
+ * Holds the JVM wide {@link AWSECommerceService}. The WSDL is read from the classpath and the JAX-WS runtime model is
+ * built only once, all clients share it and only create their own port proxies.
+ */
+final class PaapiService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PaapiService.class);
+
+    static final String WSDL_RESOURCE = "/wsdl/AWSECommerceService.wsdl";
+
+    private PaapiService() {
+    }
+
+    /**
+     * Returns the shared service, creating it on first access.
+     */
+    static AWSECommerceService getService() {
+        return ServiceHolder.SERVICE;
+    }
+
+    /**
+     * Creates a new port for the given marketplace which signs all outgoing requests with the given secret key.
+     */
+    @SuppressWarnings("rawtypes")
+    static AWSECommerceServicePortType createPort(final String marketplace, final String secretAccessKey) {
+        final AWSECommerceServicePortType port = Marketplace.fromString(marketplace).getPort(getService());
+        // The handler chain is set per port, as the service is shared between clients with different keys
+        final Binding binding = ((BindingProvider) port).getBinding();
+        final List<Handler> handlerChain = binding.getHandlerChain();
+        handlerChain.addAll(new AwsHandlerResolver(secretAccessKey).getHandlerChain());
+        binding.setHandlerChain(handlerChain);
+        return port;
+    }
+
+    private static AWSECommerceService createService() {
+        final long start = System.nanoTime();
+        final URL wsdlLocation = PaapiService.class.getResource(WSDL_RESOURCE);
+        final AWSECommerceService service;
+        if (wsdlLocation != null) {
+            service = new AWSECommerceService(wsdlLocation);
+        } else {
+            LOG.warn("Bundled WSDL {} not found, falling back to remote WSDL", WSDL_RESOURCE);
+            service = new AWSECommerceService();
+        }
+        LOG.debug("Created AWSECommerceService from {} in {} ms", wsdlLocation,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        return service;
+    }
+
+    private static class ServiceHolder {
+        private static final AWSECommerceService SERVICE = createService();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * SPI for the HTTP transport underneath the request handlers. Implementations must be thread-safe, a single instance
+ * is shared by all ports of a client and may be shared between clients.
+ */
+public interface PaapiTransport extends Closeable {
+
+    /**
+     * Posts a SOAP request to the given endpoint. The returned response must be closed by the caller to release the
+     * underlying connection.
+     *
+     * @param endpoint
+     *            the endpoint URL of the marketplace
+     * @param soapAction
+     *            the value of the SOAPAction header
+     * @param body
+     *            buffer holding the serialized SOAP envelope
+     * @param offset
+     *            start of the envelope in the buffer
+     * @param length
+     *            length of the envelope
+     */
+    TransportResponse send(String endpoint, String soapAction, byte[] body, int offset, int length)
+            throws IOException;
+
+    /**
+     * Returns the current connection pool metrics.
+     */
+    TransportMetrics getMetrics();
+}
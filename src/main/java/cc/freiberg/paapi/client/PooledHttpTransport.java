@@ -0,0 +1,217 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.conn.HttpConnectionFactory;
+import org.apache.http.conn.ManagedHttpClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.ManagedHttpClientConnectionFactory;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.pool.PoolEntry;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Default {@link PaapiTransport} backed by Apache HttpClient. Connections are kept alive and pooled per marketplace
+ * endpoint, so subsequent requests reuse the TCP connection and TLS session. Connections idle for longer than the idle
+ * timeout are closed by a background thread. Responses are requested gzip or deflate compressed.
+ */
+public class PooledHttpTransport implements PaapiTransport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledHttpTransport.class);
+
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT = 20;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+
+    private static final ContentType SOAP_CONTENT_TYPE = ContentType.create("text/xml", "UTF-8");
+
+    private final EvictingConnectionManager connectionManager;
+    private final CloseableHttpClient httpClient;
+    private final ScheduledExecutorService evictor;
+    private final long idleTimeoutMillis;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong evicted = new AtomicLong();
+
+    private volatile RequestConfig requestConfig;
+
+    public PooledHttpTransport() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_ENDPOINT, DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    public PooledHttpTransport(final int maxConnectionsPerEndpoint, final long idleTimeoutMillis) {
+        if (maxConnectionsPerEndpoint < 1) {
+            throw new IllegalArgumentException("maxConnectionsPerEndpoint must be at least 1.");
+        }
+        if (idleTimeoutMillis < 1) {
+            throw new IllegalArgumentException("idleTimeoutMillis must be positive.");
+        }
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        final HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connectionFactory = (route, config) -> {
+            created.incrementAndGet();
+            LOG.debug("Opening new connection to {}", route.getTargetHost());
+            return ManagedHttpClientConnectionFactory.INSTANCE.create(route, config);
+        };
+        connectionManager = new EvictingConnectionManager(connectionFactory);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerEndpoint);
+        connectionManager.setMaxTotal(maxConnectionsPerEndpoint * Marketplace.values().length);
+        requestConfig = RequestConfig.custom().setConnectTimeout(10000).setSocketTimeout(30000).build();
+        httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .disableCookieManagement()
+                // Responses are decompressed by TransportResponse, which also counts the bytes
+                .disableContentCompression()
+                .build();
+
+        evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "paapi-connection-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        final long evictionIntervalMillis = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdleConnections, evictionIntervalMillis, evictionIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public TransportResponse send(final String endpoint, final String soapAction, final byte[] body, final int offset,
+            final int length) throws IOException {
+        final HttpPost post = new HttpPost(endpoint);
+        post.setConfig(withDeadline(requestConfig));
+        post.setHeader("SOAPAction", "\"" + soapAction + "\"");
+        post.setHeader("Accept-Encoding", "gzip, deflate");
+        post.setEntity(new ByteArrayEntity(body, offset, length, SOAP_CONTENT_TYPE));
+        final CloseableHttpResponse response = httpClient.execute(post);
+        final HttpEntity entity = response.getEntity();
+        final Header contentEncoding = entity == null ? null : entity.getContentEncoding();
+        try {
+            return new TransportResponse(response.getStatusLine().getStatusCode(),
+                    response.getStatusLine().getReasonPhrase(),
+                    entity == null ? null : entity.getContent(),
+                    contentEncoding == null ? null : contentEncoding.getValue(),
+                    () -> {
+                        try {
+                            // Reading the rest of the entity allows the connection to be reused
+                            EntityUtils.consume(entity);
+                        } finally {
+                            response.close();
+                        }
+                    });
+        } catch (final IOException e) {
+            response.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public TransportMetrics getMetrics() {
+        final PoolStats stats = connectionManager.getTotalStats();
+        return new TransportMetrics(stats.getLeased(), stats.getAvailable(), created.get(), evicted.get());
+    }
+
+    void evictIdleConnections() {
+        final int closed = connectionManager.closeIdle(idleTimeoutMillis);
+        if (closed > 0) {
+            evicted.addAndGet(closed);
+            LOG.debug("Evicted {} idle connections", closed);
+        }
+    }
+
+    /**
+     * Sets the connect and socket (read) timeout for subsequent requests.
+     */
+    public void setTimeouts(final int connectTimeoutMillis, final int socketTimeoutMillis) {
+        requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeoutMillis)
+                .setSocketTimeout(socketTimeoutMillis)
+                .build();
+    }
+
+    /**
+     * Shortens the timeouts to the time left until the {@link Deadline} of the current thread.
+     */
+    static RequestConfig withDeadline(final RequestConfig config) {
+        final Deadline deadline = Deadline.current();
+        if (deadline == null) {
+            return config;
+        }
+        final int remaining = (int) Math.max(1, Math.min(deadline.getRemainingMillis(), Integer.MAX_VALUE));
+        return RequestConfig.copy(config)
+                .setConnectionRequestTimeout(remaining)
+                .setConnectTimeout(shorter(config.getConnectTimeout(), remaining))
+                .setSocketTimeout(shorter(config.getSocketTimeout(), remaining))
+                .build();
+    }
+
+    private static int shorter(final int timeout, final int remaining) {
+        // 0 is no timeout
+        return timeout > 0 ? Math.min(timeout, remaining) : remaining;
+    }
+
+    @Override
+    public void close() throws IOException {
+        evictor.shutdownNow();
+        httpClient.close();
+    }
+
+    /**
+     * Closes expired and idle connections like {@link PoolingHttpClientConnectionManager#closeIdleConnections(long,
+     * TimeUnit)}, but counts the connections it closed.
+     */
+    private static final class EvictingConnectionManager extends PoolingHttpClientConnectionManager {
+
+        EvictingConnectionManager(
+                final HttpConnectionFactory<HttpRoute, ManagedHttpClientConnection> connectionFactory) {
+            super(connectionFactory);
+        }
+
+        int closeIdle(final long idleTimeoutMillis) {
+            final long now = System.currentTimeMillis();
+            final int[] closed = new int[1];
+            // Runs under the pool lock, closed entries are removed from the pool afterwards
+            enumAvailable((final PoolEntry<HttpRoute, ManagedHttpClientConnection> entry) -> {
+                if (!entry.isClosed() && (entry.isExpired(now) || now - entry.getUpdated() >= idleTimeoutMillis)) {
+                    entry.close();
+                    closed[0]++;
+                }
+            });
+            return closed[0];
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import javax.xml.ws.BindingProvider;
+import javax.xml.ws.WebServiceException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ecs.client.jax.AWSECommerceServicePortType;
+
+/**
+ * Bounded pool of ports for one marketplace. JAX-WS proxies are not thread-safe, so every call borrows a port
+ * exclusively and returns it afterwards. Ports are created lazily up to the maximum size, further callers wait until a
+ * port is returned.
+ */
+class PortPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PortPool.class);
+
+    static final int DEFAULT_MAX_SIZE = 8;
+
+    // Timeouts of the JAX-WS reference implementation, standalone and bundled with the JDK
+    private static final List<String> TIMEOUT_PROPERTIES = Arrays.asList("com.sun.xml.ws.connect.timeout",
+            "com.sun.xml.ws.request.timeout", "com.sun.xml.internal.ws.connect.timeout",
+            "com.sun.xml.internal.ws.request.timeout");
+
+    private final String marketplace;
+    private final Supplier<AWSECommerceServicePortType> portFactory;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition returned = lock.newCondition();
+    private final Deque<AWSECommerceServicePortType> idle = new ArrayDeque<>();
+
+    private int maxSize;
+    private int created;
+
+    PortPool(final String marketplace, final Supplier<AWSECommerceServicePortType> portFactory, final int maxSize) {
+        this.marketplace = marketplace;
+        this.portFactory = portFactory;
+        setMaxSize(maxSize);
+    }
+
+    /**
+     * Borrows a port, blocking until one is available. The port must be handed back with
+     * {@link #release(AWSECommerceServicePortType)}.
+     */
+    AWSECommerceServicePortType borrow() throws WebServiceException {
+        lock.lock();
+        try {
+            long remaining = Deadline.remainingNanos();
+            while (idle.isEmpty() && created >= maxSize) {
+                if (remaining <= 0) {
+                    throw new DeadlineExceededException(
+                            "Deadline exceeded while waiting for a port for " + marketplace);
+                }
+                remaining = returned.awaitNanos(remaining);
+            }
+            if (!idle.isEmpty()) {
+                return applyDeadline(idle.pop());
+            }
+            // Reserve the slot, the port itself is created outside of the lock
+            created++;
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while waiting for a port for " + marketplace, e);
+        } finally {
+            lock.unlock();
+        }
+        try {
+            final AWSECommerceServicePortType port = portFactory.get();
+            LOG.debug("Created new port for {}", marketplace);
+            return applyDeadline(port);
+        } catch (final RuntimeException e) {
+            discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Limits the connect and read timeouts of a JAX-WS port to the time left until the deadline of the current thread.
+     * Ports sending through a {@link PaapiTransport} leave that to the transport.
+     */
+    private static AWSECommerceServicePortType applyDeadline(final AWSECommerceServicePortType port) {
+        if (!(port instanceof BindingProvider)) {
+            return port;
+        }
+        final Map<String, Object> context = ((BindingProvider) port).getRequestContext();
+        final Deadline deadline = Deadline.current();
+        for (final String property : TIMEOUT_PROPERTIES) {
+            if (deadline == null) {
+                context.remove(property);
+            } else {
+                context.put(property, (int) Math.max(1, Math.min(deadline.getRemainingMillis(), Integer.MAX_VALUE)));
+            }
+        }
+        return port;
+    }
+
+    /**
+     * Returns a borrowed port to the pool.
+     */
+    void release(final AWSECommerceServicePortType port) {
+        lock.lock();
+        try {
+            if (created > maxSize) {
+                // Pool was shrunk while the port was in use
+                created--;
+            } else {
+                idle.push(port);
+            }
+            returned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void discard() {
+        lock.lock();
+        try {
+            created--;
+            returned.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getMaxSize() {
+        lock.lock();
+        try {
+            return maxSize;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void setMaxSize(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1.");
+        }
+        lock.lock();
+        try {
+            this.maxSize = maxSize;
+            while (created > maxSize && !idle.isEmpty()) {
+                idle.pop();
+                created--;
+            }
+            returned.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getIdle() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int getLeased() {
+        lock.lock();
+        try {
+            return created - idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
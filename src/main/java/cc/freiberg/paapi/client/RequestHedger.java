@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import javax.xml.ws.WebServiceException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends a second copy of a read-only request if the first one takes longer than most requests of its operation, and
+ * uses whichever answers first. The delay is a percentile of the recent latencies of the operation, no copy is sent
+ * until enough latencies were recorded. Hedges take a permit of the rate limiter like any other request and are capped
+ * to a fraction of all requests.
+ */
+class RequestHedger {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestHedger.class);
+
+    static final double DEFAULT_PERCENTILE = 0.95;
+    static final double DEFAULT_MAX_HEDGE_RATIO = 0.05;
+
+    private static final int SAMPLES = 256;
+    private static final int MIN_SAMPLES = 32;
+    private static final int RECOMPUTE_INTERVAL = 32;
+
+    private static final class ExecutorHolder {
+        private static final ExecutorService EXECUTOR = PaapiExecutors.newPerTaskExecutor("paapi-hedge");
+    }
+
+    /**
+     * Recent latencies of one operation.
+     */
+    private final class Latencies {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final long[] samples = new long[SAMPLES];
+        private long count;
+        private volatile long delayNanos = -1;
+
+        void record(final long nanos) {
+            lock.lock();
+            try {
+                samples[(int) (count++ % SAMPLES)] = nanos;
+                if (count >= MIN_SAMPLES && count % RECOMPUTE_INTERVAL == 0) {
+                    final long[] sorted = Arrays.copyOf(samples, (int) Math.min(count, SAMPLES));
+                    Arrays.sort(sorted);
+                    delayNanos = sorted[(int) Math.min(sorted.length - 1, sorted.length * percentile)];
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private final ConcurrentMap<String, Latencies> latencies = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    private volatile boolean enabled;
+    private volatile double percentile = DEFAULT_PERCENTILE;
+    private volatile double maxHedgeRatio = DEFAULT_MAX_HEDGE_RATIO;
+
+    <T> T call(final String operation, final Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        requests.increment();
+        final Latencies operationLatencies = latencies.computeIfAbsent(operation, o -> new Latencies());
+        final long delay = operationLatencies.delayNanos;
+        if (delay < 0) {
+            return timed(operationLatencies, call);
+        }
+        final RequestPriority priority = RequestScheduler.getCurrentPriority();
+        final Deadline deadline = Deadline.current();
+        final Callable<T> attempt = () -> Deadline.with(deadline,
+                () -> RequestScheduler.withPriority(priority, () -> timed(operationLatencies, call)));
+        final CompletionService<T> completion = new ExecutorCompletionService<>(ExecutorHolder.EXECUTOR);
+        final Future<T> primary = completion.submit(attempt);
+        Future<T> hedge = null;
+        try {
+            Future<T> done = completion.poll(delay, TimeUnit.NANOSECONDS);
+            if (done == null) {
+                if (hedges.sum() < maxHedgeRatio * requests.sum()) {
+                    hedges.increment();
+                    LOG.debug("{} took longer than {} ms, sending hedge", operation,
+                            TimeUnit.NANOSECONDS.toMillis(delay));
+                    hedge = completion.submit(attempt);
+                }
+                done = completion.take();
+            }
+            try {
+                final T result = done.get();
+                if (done == hedge) {
+                    hedgeWins.increment();
+                }
+                return result;
+            } catch (final ExecutionException e) {
+                if (hedge == null) {
+                    throw e;
+                }
+                // Use the other request if the first one to finish failed
+                return completion.take().get();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while waiting for " + operation, e);
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw new WebServiceException(e.getCause());
+        } finally {
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    private static <T> T timed(final Latencies latencies, final Supplier<T> call) {
+        final long start = System.nanoTime();
+        final T result = call.get();
+        latencies.record(System.nanoTime() - start);
+        return result;
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    double getPercentile() {
+        return percentile;
+    }
+
+    void setPercentile(final double percentile) {
+        if (!(percentile > 0 && percentile < 1)) {
+            throw new IllegalArgumentException("percentile must be between 0 and 1.");
+        }
+        this.percentile = percentile;
+    }
+
+    double getMaxHedgeRatio() {
+        return maxHedgeRatio;
+    }
+
+    void setMaxHedgeRatio(final double maxHedgeRatio) {
+        if (maxHedgeRatio < 0 || maxHedgeRatio > 1) {
+            throw new IllegalArgumentException("maxHedgeRatio must be between 0 and 1.");
+        }
+        this.maxHedgeRatio = maxHedgeRatio;
+    }
+
+    long getHedges() {
+        return hedges.sum();
+    }
+
+    long getHedgeWins() {
+        return hedgeWins.sum();
+    }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+import javax.xml.ws.WebServiceException;
+
+/**
+ * Decides which waiting request may take the next permit of the rate limiter. Only one request at a time waits for a
+ * permit, all others queue here per priority class. The next request is picked by weighted fair queuing: every request
+ * gets a virtual finish time of {@code 1 / weight} after the previous request of its class, the request with the
+ * earliest finish time goes first. With the default weights interactive requests overtake queued background requests,
+ * which still make progress with the quota left over.
+ */
+public class RequestScheduler {
+
+    private static final ThreadLocal<RequestPriority> CURRENT = new ThreadLocal<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<RequestPriority, Deque<Ticket>> queues = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestPriority, Double> lastFinish = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestPriority, Integer> weights = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestPriority, LongAdder> admitted = new EnumMap<>(RequestPriority.class);
+    private final Map<RequestPriority, LongAdder> waitNanos = new EnumMap<>(RequestPriority.class);
+
+    private double virtualTime;
+    private boolean busy;
+
+    private static final class Ticket {
+        private final RequestPriority priority;
+        private final double finish;
+        private final Condition turn;
+        private boolean granted;
+
+        Ticket(final RequestPriority priority, final double finish, final Condition turn) {
+            this.priority = priority;
+            this.finish = finish;
+            this.turn = turn;
+        }
+    }
+
+    public RequestScheduler() {
+        for (final RequestPriority priority : RequestPriority.values()) {
+            queues.put(priority, new ArrayDeque<>());
+            lastFinish.put(priority, 0.0);
+            weights.put(priority, priority.getDefaultWeight());
+            admitted.put(priority, new LongAdder());
+            waitNanos.put(priority, new LongAdder());
+        }
+    }
+
+    /**
+     * Runs the call with the given priority for all requests it sends from the current thread.
+     */
+    public static <T> T withPriority(final RequestPriority priority, final Supplier<T> call) {
+        final RequestPriority previous = CURRENT.get();
+        CURRENT.set(priority);
+        try {
+            return call.get();
+        } finally {
+            if (previous == null) {
+                CURRENT.remove();
+            } else {
+                CURRENT.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Returns the priority of requests sent from the current thread.
+     */
+    public static RequestPriority getCurrentPriority() {
+        final RequestPriority priority = CURRENT.get();
+        return priority == null ? RequestPriority.NORMAL : priority;
+    }
+
+    /**
+     * Returns whether a priority was chosen for requests sent from the current thread.
+     */
+    static boolean isPrioritySet() {
+        return CURRENT.get() != null;
+    }
+
+    /**
+     * Blocks until it is the turn of the current thread or its deadline has passed. The turn must be handed on with
+     * {@link #leave()}.
+     */
+    void enter() throws WebServiceException {
+        final RequestPriority priority = getCurrentPriority();
+        final long start = System.nanoTime();
+        lock.lock();
+        try {
+            final double finish = Math.max(virtualTime, lastFinish.get(priority)) + 1.0 / weights.get(priority);
+            lastFinish.put(priority, finish);
+            if (!busy) {
+                busy = true;
+                virtualTime = finish;
+            } else {
+                final Ticket ticket = new Ticket(priority, finish, lock.newCondition());
+                queues.get(priority).add(ticket);
+                try {
+                    long remaining = Deadline.remainingNanos();
+                    while (!ticket.granted) {
+                        if (remaining <= 0) {
+                            queues.get(priority).remove(ticket);
+                            throw new DeadlineExceededException("Deadline exceeded in the request queue");
+                        }
+                        remaining = ticket.turn.awaitNanos(remaining);
+                    }
+                } catch (final InterruptedException e) {
+                    if (ticket.granted) {
+                        next();
+                    } else {
+                        queues.get(priority).remove(ticket);
+                    }
+                    Thread.currentThread().interrupt();
+                    throw new WebServiceException("Interrupted while waiting in the request queue", e);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        admitted.get(priority).increment();
+        waitNanos.get(priority).add(System.nanoTime() - start);
+    }
+
+    /**
+     * Hands the turn on to the next waiting request.
+     */
+    void leave() {
+        lock.lock();
+        try {
+            next();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void next() {
+        Ticket next = null;
+        for (final Deque<Ticket> queue : queues.values()) {
+            final Ticket head = queue.peek();
+            if (head != null && (next == null || head.finish < next.finish)) {
+                next = head;
+            }
+        }
+        if (next == null) {
+            busy = false;
+            return;
+        }
+        queues.get(next.priority).remove();
+        virtualTime = next.finish;
+        next.granted = true;
+        next.turn.signal();
+    }
+
+    public int getWeight(final RequestPriority priority) {
+        lock.lock();
+        try {
+            return weights.get(priority);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the share of the quota a priority class gets while other classes are waiting as well.
+     */
+    public void setWeight(final RequestPriority priority, final int weight) {
+        if (weight < 1) {
+            throw new IllegalArgumentException("weight must be at least 1.");
+        }
+        lock.lock();
+        try {
+            weights.put(priority, weight);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests currently waiting in the queue of the priority class.
+     */
+    public int getQueued(final RequestPriority priority) {
+        lock.lock();
+        try {
+            return queues.get(priority).size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of requests of the priority class which got their turn.
+     */
+    public long getAdmitted(final RequestPriority priority) {
+        return admitted.get(priority).sum();
+    }
+
+    /**
+     * Returns the total time requests of the priority class waited in the queue.
+     */
+    public long getQueueWaitMillis(final RequestPriority priority) {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.get(priority).sum());
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("RequestScheduler [");
+        for (final RequestPriority priority : RequestPriority.values()) {
+            if (priority.ordinal() > 0) {
+                sb.append(", ");
+            }
+            sb.append(priority).append("=[admitted=").append(getAdmitted(priority)).append(", queueWaitMillis=")
+                    .append(getQueueWaitMillis(priority)).append(']');
+        }
+        return sb.append(']').toString();
+    }
+}
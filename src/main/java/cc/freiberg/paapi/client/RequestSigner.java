@@ -0,0 +1,127 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.io.UnsupportedEncodingException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base64;
+
+/**
+ * Creates the timestamp and HmacSHA256 signature every request has to carry. The timestamp has a resolution of one
+ * second, so both the timestamp and the signature per operation are computed at most once per second. Initialized
+ * {@link Mac}s are pooled instead of created per signature.
+ */
+class RequestSigner {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss'Z'")
+            .withZone(ZoneOffset.UTC);
+
+    private static volatile Timestamp timestamp = new Timestamp(Long.MIN_VALUE, null);
+
+    private final Mac prototype;
+    private final ObjectPool<Mac> macs = new ObjectPool<>(this::newMac);
+    private final Map<String, Signature> signatures = new ConcurrentHashMap<>();
+
+    RequestSigner(final String awsSecretKey) {
+        try {
+            prototype = Mac.getInstance(ALGORITHM);
+            prototype.init(new SecretKeySpec(stringToUtf8(awsSecretKey), ALGORITHM));
+        } catch (final NoSuchAlgorithmException nsae) {
+            throw new RuntimeException("NoSuchAlgorithmException was thrown.", nsae);
+        } catch (final InvalidKeyException ike) {
+            throw new RuntimeException("InvalidKeyException was thrown.", ike);
+        }
+    }
+
+    String getSignature(final String operation, final String timeStamp) {
+        final Signature cached = signatures.get(operation);
+        if (cached != null && cached.timeStamp.equals(timeStamp)) {
+            return cached.value;
+        }
+        final Mac signer = macs.borrow();
+        signer.update(stringToUtf8(operation));
+        signer.update(stringToUtf8(timeStamp));
+        final String signature = Base64.encodeBase64String(signer.doFinal());
+        // doFinal resets the Mac for the next signature
+        macs.release(signer);
+        signatures.put(operation, new Signature(timeStamp, signature));
+        return signature;
+    }
+
+    String getTimestamp() {
+        final long second = System.currentTimeMillis() / 1000;
+        final Timestamp current = timestamp;
+        if (current.second == second) {
+            return current.text;
+        }
+        final Timestamp next = new Timestamp(second, TIMESTAMP_FORMAT.format(Instant.ofEpochSecond(second)));
+        timestamp = next;
+        return next.text;
+    }
+
+    private Mac newMac() {
+        try {
+            return (Mac) prototype.clone();
+        } catch (final CloneNotSupportedException e) {
+            throw new RuntimeException("CloneNotSupportedException was thrown.", e);
+        }
+    }
+
+    static byte[] stringToUtf8(final String source) {
+        try {
+            return source.getBytes("UTF-8");
+        } catch (final UnsupportedEncodingException e) {
+            // This will never happen. UTF-8 is always available.
+            throw new RuntimeException("getBytes threw an UnsupportedEncodingException", e);
+        }
+    }
+
+    private static class Timestamp {
+        private final long second;
+        private final String text;
+
+        Timestamp(final long second, final String text) {
+            this.second = second;
+            this.text = text;
+        }
+    }
+
+    private static class Signature {
+        private final String timeStamp;
+        private final String value;
+
+        Signature(final String timeStamp, final String value) {
+            this.timeStamp = timeStamp;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import com.ecs.client.jax.Errors;
+
+/**
+ * Turns the errors Amazon reports in the body of a response into exceptions. A throttled request is thrown as a
+ * {@link PaapiTransportException} with the fault code {@code RequestThrottled}, so that it is retried and lowers the
+ * rate like a throttling fault. All other errors are thrown as {@link IllegalArgumentException}.
+ */
+final class ResponseErrors {
+
+    static final String REQUEST_THROTTLED = "RequestThrottled";
+
+    private ResponseErrors() {
+    }
+
+    static RuntimeException toException(final List<Errors.Error> errors) {
+        final String message = errors.stream().map(ResponseErrors::makeString)
+                .collect(Collectors.joining(System.lineSeparator()));
+        if (errors.stream().anyMatch(ResponseErrors::isThrottled)) {
+            // The response itself arrived with status 200
+            return new PaapiTransportException(message, 200, REQUEST_THROTTLED);
+        }
+        return new IllegalArgumentException(message);
+    }
+
+    static boolean isThrottled(final Errors.Error error) {
+        return error.getCode() != null && error.getCode().endsWith(REQUEST_THROTTLED);
+    }
+
+    static String makeString(final Errors.Error error) {
+        return error.getCode() + ": " + error.getMessage();
+    }
+}
@@ -0,0 +1,363 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.net.ConnectException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import javax.xml.ws.WebServiceException;
+import javax.xml.ws.soap.SOAPFaultException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Retries failed calls. Failures are classified by HTTP status code and SOAP fault code: throttling, server errors and
+ * connections which could not be established are retried, everything else fails immediately. A RequestThrottled error
+ * in the response body counts as throttling. Cart changes are not idempotent, so they are only retried if Amazon
+ * certainly did not process them: when they were throttled or the connection could not be established. The delay
+ * between attempts grows exponentially with decorrelated jitter. Blocking calls wait for it on the calling thread,
+ * asynchronous calls are scheduled. Retries are limited by a budget shared by all calls of a client: every call adds a
+ * fraction of a retry to the budget, every retry takes a whole one, so during an outage retries cannot multiply the
+ * load. No retry is made if its delay alone exceeds the {@link Deadline} of the call.
+ */
+class RetryEngine {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RetryEngine.class);
+
+    static final int DEFAULT_MAX_RETRIES = 3;
+    static final long DEFAULT_BASE_DELAY_MILLIS = 1000;
+    static final long DEFAULT_MAX_DELAY_MILLIS = 20000;
+    static final double DEFAULT_BUDGET_RATIO = 0.2;
+
+    // Retries which can be saved up in the budget, also the budget available right after start
+    private static final long MAX_BUDGET = 10;
+    private static final long BUDGET_UNIT = 1000;
+
+    // Operations which change the cart and must not be sent twice
+    private static final Set<String> CART_WRITES = new HashSet<>(
+            Arrays.asList("CartAdd", "CartCreate", "CartModify", "CartClear"));
+
+    // The JAX-WS runtime reports HTTP errors only in the message
+    private static final Pattern HTTP_STATUS = Pattern.compile("HTTP status code (\\d{3})");
+
+    private volatile int maxRetries = DEFAULT_MAX_RETRIES;
+    private volatile long baseDelayMillis = DEFAULT_BASE_DELAY_MILLIS;
+    private volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+    private volatile double budgetRatio = DEFAULT_BUDGET_RATIO;
+
+    private final AtomicLong budget = new AtomicLong(MAX_BUDGET * BUDGET_UNIT);
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    private static final class SchedulerHolder {
+        private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "paapi-retry-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the call, retrying it on the calling thread. The calling thread waits for the delay between attempts, as it
+     * is blocked by the call anyway, only {@link #callAsync(String, Supplier)} schedules retries without a waiting
+     * thread. Throws the last failure if the call cannot be retried any more.
+     */
+    <T> T call(final String operation, final WebServiceWrapper<T> call) throws WebServiceException {
+        deposit();
+        long delay = 0;
+        for (int attempt = 0;; attempt++) {
+            try {
+                return call.call();
+            } catch (final RuntimeException e) {
+                final long nextDelay = nextDelay(delay);
+                if (!shouldRetry(e, operation, attempt, nextDelay, Deadline.current())) {
+                    throw e;
+                }
+                delay = nextDelay;
+                LOG.info("Running retry attempt {}/{} in {} ms: {}", attempt + 1, maxRetries, delay, e.getMessage());
+                try {
+                    TimeUnit.MILLISECONDS.sleep(delay);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new WebServiceException("Interrupted while waiting for retry", ie);
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs the asynchronous call, scheduling retries after their delay instead of blocking a thread. Completing or
+     * cancelling the returned future cancels the attempt in flight and all further retries.
+     */
+    <T> CompletableFuture<T> callAsync(final String operation, final Supplier<CompletableFuture<T>> call) {
+        deposit();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        attempt(operation, call, 0, 0, Deadline.current(), result);
+        return result;
+    }
+
+    private <T> void attempt(final String operation, final Supplier<CompletableFuture<T>> call, final int attempt,
+            final long delay, final Deadline deadline, final CompletableFuture<T> result) {
+        if (result.isDone()) {
+            // Cancelled or timed out while waiting for the retry
+            return;
+        }
+        final CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (final RuntimeException e) {
+            retryOrFail(operation, call, attempt, delay, deadline, result, e);
+            return;
+        }
+        result.whenComplete((value, failure) -> future.cancel(true));
+        future.whenComplete((value, failure) -> {
+            if (failure == null) {
+                result.complete(value);
+            } else {
+                retryOrFail(operation, call, attempt, delay, deadline, result, unwrap(failure));
+            }
+        });
+    }
+
+    private <T> void retryOrFail(final String operation, final Supplier<CompletableFuture<T>> call,
+            final int attempt, final long delay, final Deadline deadline, final CompletableFuture<T> result,
+            final Throwable failure) {
+        final long nextDelay = nextDelay(delay);
+        if (!(failure instanceof RuntimeException)
+                || !shouldRetry((RuntimeException) failure, operation, attempt, nextDelay, deadline)) {
+            result.completeExceptionally(failure);
+            return;
+        }
+        LOG.info("Scheduling retry attempt {}/{} in {} ms: {}", attempt + 1, maxRetries, nextDelay,
+                failure.getMessage());
+        SchedulerHolder.SCHEDULER.schedule(() -> attempt(operation, call, attempt + 1, nextDelay, deadline, result),
+                nextDelay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns a future completed after the given time.
+     */
+    static CompletableFuture<Void> delay(final long nanos) {
+        if (nanos <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        final CompletableFuture<Void> delay = new CompletableFuture<>();
+        SchedulerHolder.SCHEDULER.schedule(() -> delay.complete(null), nanos, TimeUnit.NANOSECONDS);
+        return delay;
+    }
+
+    static Throwable unwrap(final Throwable failure) {
+        return failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+    }
+
+    private boolean shouldRetry(final RuntimeException e, final String operation, final int attempt,
+            final long delay, final Deadline deadline) {
+        if (attempt >= maxRetries || !isRetryable(e, operation)) {
+            return false;
+        }
+        if (deadline != null && TimeUnit.MILLISECONDS.toNanos(delay) >= deadline.getRemainingNanos()) {
+            LOG.debug("Not retrying, the deadline would pass before the retry: {}", e.getMessage());
+            return false;
+        }
+        if (!withdraw()) {
+            budgetExhausted.increment();
+            LOG.warn("Retry budget exhausted, not retrying: {}", e.getMessage());
+            return false;
+        }
+        retries.increment();
+        return true;
+    }
+
+    /**
+     * Returns the delay before the next attempt, random between the base delay and three times the previous delay.
+     */
+    long nextDelay(final long previousDelay) {
+        final long base = baseDelayMillis;
+        final long upper = Math.max(base, previousDelay * 3);
+        final long delay = upper > base ? ThreadLocalRandom.current().nextLong(base, upper + 1) : base;
+        return Math.min(delay, maxDelayMillis);
+    }
+
+    private void deposit() {
+        final long amount = (long) (budgetRatio * BUDGET_UNIT);
+        budget.updateAndGet(b -> Math.min(b + amount, MAX_BUDGET * BUDGET_UNIT));
+    }
+
+    private boolean withdraw() {
+        while (true) {
+            final long current = budget.get();
+            if (current < BUDGET_UNIT) {
+                return false;
+            }
+            if (budget.compareAndSet(current, current - BUDGET_UNIT)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the failed call of the operation may be sent again. Cart changes are only sent again if they were
+     * throttled or did not reach the server, a server error may come after the cart was already changed.
+     */
+    static boolean isRetryable(final RuntimeException e, final String operation) {
+        if (!CART_WRITES.contains(operation)) {
+            return isRetryable(e);
+        }
+        final int status = getStatusCode(e);
+        final String faultCode = getFaultCode(e);
+        return status == 429 || status == 503 || faultCode != null && faultCode.endsWith("RequestThrottled")
+                || e instanceof WebServiceException && e.getCause() instanceof ConnectException;
+    }
+
+    /**
+     * Returns whether the failure is temporary: throttling, server errors and connections which were refused.
+     */
+    static boolean isRetryable(final RuntimeException e) {
+        if (e instanceof RateLimitExceededException) {
+            return false;
+        }
+        final int status = getStatusCode(e);
+        if (status == 429 || status == 500 || status == 502 || status == 503 || status == 504) {
+            return true;
+        }
+        final String faultCode = getFaultCode(e);
+        if (faultCode != null) {
+            return faultCode.endsWith("RequestThrottled") || faultCode.endsWith("ServiceUnavailable")
+                    || faultCode.endsWith("InternalError");
+        }
+        // The request did not reach the server
+        return e instanceof WebServiceException && e.getCause() instanceof ConnectException;
+    }
+
+    /**
+     * Returns whether the failure was raised by the client itself on behalf of this caller, so the request may not even
+     * have reached Amazon: a passed deadline, an exhausted quota, a full bulkhead, a cancellation or an interrupt.
+     */
+    static boolean isCallerLocal(final RuntimeException e) {
+        if (e instanceof DeadlineExceededException || e instanceof RateLimitExceededException
+                || e instanceof BulkheadFullException || e instanceof CancellationException) {
+            return true;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the HTTP status code of the failure or 0 if it is unknown.
+     */
+    static int getStatusCode(final RuntimeException e) {
+        if (e instanceof PaapiTransportException) {
+            return ((PaapiTransportException) e).getStatusCode();
+        }
+        if (e instanceof WebServiceException && e.getMessage() != null) {
+            final Matcher matcher = HTTP_STATUS.matcher(e.getMessage());
+            if (matcher.find()) {
+                return Integer.parseInt(matcher.group(1));
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Returns the local part of the SOAP fault code of the failure or {@code null} if it is no SOAP fault.
+     */
+    static String getFaultCode(final RuntimeException e) {
+        if (e instanceof PaapiTransportException) {
+            return ((PaapiTransportException) e).getFaultCode();
+        }
+        if (e instanceof SOAPFaultException && ((SOAPFaultException) e).getFault() != null) {
+            return SoapCodec.localPart(((SOAPFaultException) e).getFault().getFaultCode());
+        }
+        return null;
+    }
+
+    int getMaxRetries() {
+        return maxRetries;
+    }
+
+    void setMaxRetries(final int maxRetries) {
+        if (maxRetries < 0) {
+            throw new IllegalArgumentException("maxRetries must not be negative.");
+        }
+        this.maxRetries = maxRetries;
+    }
+
+    long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    void setBaseDelayMillis(final long baseDelayMillis) {
+        if (baseDelayMillis < 0) {
+            throw new IllegalArgumentException("baseDelayMillis must not be negative.");
+        }
+        this.baseDelayMillis = baseDelayMillis;
+    }
+
+    long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    void setMaxDelayMillis(final long maxDelayMillis) {
+        if (maxDelayMillis < 0) {
+            throw new IllegalArgumentException("maxDelayMillis must not be negative.");
+        }
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    void setBudgetRatio(final double budgetRatio) {
+        if (budgetRatio < 0) {
+            throw new IllegalArgumentException("budgetRatio must not be negative.");
+        }
+        this.budgetRatio = budgetRatio;
+    }
+
+    long getRetries() {
+        return retries.sum();
+    }
+
+    long getBudgetExhausted() {
+        return budgetExhausted.sum();
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import javax.xml.ws.WebServiceException;
+
+/**
+ * Coalesces identical requests in flight. The first caller sends the request, callers with an equal request arriving
+ * before it completed wait for it and get the same result or exception. Requests are compared by operation,
+ * marketplace and all fields of the request, response groups regardless of their order. Only outcomes from Amazon are
+ * shared: if the first caller failed for a reason of its own, like its deadline, the waiting callers send the request
+ * again.
+ */
+class SingleFlight {
+
+    private static final ClassValue<List<Field>> FIELDS = new ClassValue<List<Field>>() {
+        @Override
+        protected List<Field> computeValue(final Class<?> type) {
+            final List<Field> fields = new ArrayList<>();
+            for (final Field field : type.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    field.setAccessible(true);
+                    fields.add(field);
+                }
+            }
+            return fields;
+        }
+    };
+
+    // Tells waiting callers to send the request themselves
+    private static final Object REISSUE = new Object();
+
+    private final ConcurrentMap<List<Object>, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder coalesced = new LongAdder();
+    private volatile boolean enabled = true;
+
+    @SuppressWarnings("unchecked")
+    <T> T call(final String operation, final String marketplace, final Object request, final Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        final List<Object> key = key(operation, marketplace, request);
+        while (true) {
+            final CompletableFuture<Object> future = new CompletableFuture<>();
+            final CompletableFuture<Object> existing = inFlight.putIfAbsent(key, future);
+            if (existing != null) {
+                final Object result = join(existing);
+                if (result == REISSUE) {
+                    // The first caller failed for a reason of its own, send the request under our own deadline
+                    continue;
+                }
+                coalesced.increment();
+                return (T) result;
+            }
+            final T result;
+            try {
+                result = call.get();
+            } catch (final RuntimeException e) {
+                inFlight.remove(key, future);
+                if (RetryEngine.isCallerLocal(e)) {
+                    future.complete(REISSUE);
+                } else {
+                    future.completeExceptionally(e);
+                }
+                throw e;
+            } catch (final Error e) {
+                inFlight.remove(key, future);
+                future.completeExceptionally(e);
+                throw e;
+            }
+            // Removed first, so that callers sending the request again do not find the completed call
+            inFlight.remove(key, future);
+            future.complete(result);
+            return result;
+        }
+    }
+
+    private Object join(final CompletableFuture<Object> future) {
+        try {
+            final long remaining = Deadline.remainingNanos();
+            return remaining == Long.MAX_VALUE ? future.get() : future.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (final TimeoutException e) {
+            throw new DeadlineExceededException("Deadline exceeded while waiting for an identical request");
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new WebServiceException("Interrupted while waiting for an identical request", e);
+        } catch (final ExecutionException e) {
+            // The outcome of the first caller is shared
+            coalesced.increment();
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw (Error) e.getCause();
+        }
+    }
+
+    static List<Object> key(final String operation, final String marketplace, final Object request) {
+        final List<Field> fields = FIELDS.get(request.getClass());
+        final List<Object> key = new ArrayList<>(fields.size() + 2);
+        key.add(operation);
+        key.add(marketplace);
+        for (final Field field : fields) {
+            final Object value;
+            try {
+                value = field.get(request);
+            } catch (final IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+            key.add(normalize(field.getName(), value));
+        }
+        return key;
+    }
+
+    /**
+     * Returns a shallow copy of a request, the copy shares the lists of the request.
+     */
+    @SuppressWarnings("unchecked")
+    static <T> T copy(final T request) {
+        try {
+            final T copy = (T) request.getClass().getConstructor().newInstance();
+            for (final Field field : FIELDS.get(request.getClass())) {
+                field.set(copy, field.get(request));
+            }
+            return copy;
+        } catch (final ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object normalize(final String name, final Object value) {
+        if (value instanceof String) {
+            return ((String) value).trim();
+        }
+        if (value instanceof Collection) {
+            final Collection<?> values = (Collection<?>) value;
+            if (values.isEmpty()) {
+                // JAXB creates lists lazily, an empty list is the same as none
+                return null;
+            }
+            final List<Object> normalized = new ArrayList<>(values.size());
+            for (final Object v : values) {
+                normalized.add(normalize(name, v));
+            }
+            if (!"responseGroup".equals(name)) {
+                return normalized;
+            }
+            // The order of response groups does not change the response, the order of item ids does. A null response
+            // group is not sent.
+            final TreeSet<Object> responseGroups = new TreeSet<>();
+            for (final Object responseGroup : normalized) {
+                if (responseGroup != null) {
+                    responseGroups.add(responseGroup);
+                }
+            }
+            return responseGroups.isEmpty() ? null : new ArrayList<>(responseGroups);
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of calls which got the outcome of an identical call instead of sending the request.
+     */
+    long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    void setEnabled(final boolean enabled) {
+        this.enabled = enabled;
+    }
+}
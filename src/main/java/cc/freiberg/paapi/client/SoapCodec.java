@@ -0,0 +1,259 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.bind.JAXBContext;
+import javax.xml.bind.JAXBException;
+import javax.xml.bind.Marshaller;
+import javax.xml.bind.Unmarshaller;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.ws.WebServiceException;
+
+import com.ecs.client.jax.ObjectFactory;
+
+/**
+ * Serializes requests into SOAP envelopes and reads responses for the {@link TransportPort}.
+ */
+final class SoapCodec {
+
+    static final String SOAP_NS = "http://schemas.xmlsoap.org/soap/envelope/";
+    static final String AWS_NS = "http://webservices.amazon.com/AWSECommerceService/2013-08-01";
+
+    private static final byte[] ENVELOPE_START = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<soapenv:Envelope xmlns:soapenv=\"" + SOAP_NS + "\"><soapenv:Body>").getBytes(StandardCharsets.UTF_8);
+    private static final byte[] ENVELOPE_END = "</soapenv:Body></soapenv:Envelope>".getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] END_TAG_START = "</".getBytes(StandardCharsets.UTF_8);
+
+    private static final XMLInputFactory INPUT_FACTORY = newInputFactory();
+    // Marshallers are not thread-safe
+    private static final ObjectPool<Marshaller> MARSHALLERS = new ObjectPool<>(SoapCodec::newMarshaller);
+    private static final ObjectPool<Unmarshaller> UNMARSHALLERS = new ObjectPool<>(SoapCodec::newUnmarshaller);
+
+    private SoapCodec() {
+    }
+
+    static JAXBContext getContext() {
+        return ContextHolder.CONTEXT;
+    }
+
+    /**
+     * Serializes the request wrapper of the given operation into a signed SOAP envelope. The wrapper is marshalled
+     * straight into the buffer, signature and timestamp are spliced in front of its end tag.
+     */
+    static void encode(final Object wrapper, final String operation, final RequestSigner signer,
+            final EnvelopeBuffer out) throws WebServiceException {
+        out.write(ENVELOPE_START);
+        final Marshaller marshaller = MARSHALLERS.borrow();
+        try {
+            marshaller.marshal(wrapper, out);
+        } catch (final JAXBException e) {
+            throw new WebServiceException("Could not serialize " + operation, e);
+        } finally {
+            MARSHALLERS.release(marshaller);
+        }
+        final int endTag = out.lastIndexOf(END_TAG_START);
+        // Name of the operation element including its namespace prefix, if any
+        final String elementName = new String(out.array(), endTag + 2, out.size() - endTag - 3,
+                StandardCharsets.UTF_8);
+        final int colon = elementName.indexOf(':');
+        out.truncate(endTag);
+        writeSignature(out, colon < 0 ? "" : elementName.substring(0, colon + 1), operation, signer);
+        out.write(END_TAG_START);
+        out.writeAscii(elementName);
+        out.write('>');
+        out.write(ENVELOPE_END);
+    }
+
+    static void writeEnvelopeStart(final EnvelopeBuffer out) {
+        out.write(ENVELOPE_START);
+    }
+
+    static void writeEnvelopeEnd(final EnvelopeBuffer out) {
+        out.write(ENVELOPE_END);
+    }
+
+    /**
+     * Writes the Signature and Timestamp elements. The prefix must be bound to the AWS namespace.
+     */
+    static void writeSignature(final EnvelopeBuffer out, final String prefix, final String operation,
+            final RequestSigner signer) {
+        final String timeStamp = signer.getTimestamp();
+        writeElement(out, prefix, "Signature", signer.getSignature(operation, timeStamp));
+        writeElement(out, prefix, "Timestamp", timeStamp);
+    }
+
+    private static void writeElement(final EnvelopeBuffer out, final String prefix, final String name,
+            final String asciiText) {
+        out.write('<');
+        out.writeAscii(prefix);
+        out.writeAscii(name);
+        out.write('>');
+        out.writeAscii(asciiText);
+        out.write(END_TAG_START);
+        out.writeAscii(prefix);
+        out.writeAscii(name);
+        out.write('>');
+    }
+
+    /**
+     * Reads the response of the given type from the transport response. The body is streamed through StAX and
+     * unmarshalled without building a document first. HTTP errors and SOAP faults are thrown as
+     * {@link PaapiTransportException}.
+     */
+    static <T> T decode(final TransportResponse response, final Class<T> type) throws WebServiceException {
+        final int statusCode = response.getStatusCode();
+        if (response.getBody() == null) {
+            throw statusException(response);
+        }
+        XMLStreamReader reader = null;
+        try {
+            reader = INPUT_FACTORY.createXMLStreamReader(response.getBody());
+            final boolean hasPayload = moveToPayload(reader);
+            if (hasPayload && SOAP_NS.equals(reader.getNamespaceURI()) && "Fault".equals(reader.getLocalName())) {
+                throw readFault(reader, statusCode);
+            }
+            if (statusCode != 200 || !hasPayload) {
+                throw statusException(response);
+            }
+            final Unmarshaller unmarshaller = UNMARSHALLERS.borrow();
+            try {
+                return unmarshaller.unmarshal(reader, type).getValue();
+            } finally {
+                UNMARSHALLERS.release(unmarshaller);
+            }
+        } catch (XMLStreamException | JAXBException e) {
+            if (statusCode != 200) {
+                throw statusException(response);
+            }
+            throw new WebServiceException("Could not read " + type.getSimpleName(), e);
+        } finally {
+            close(reader);
+        }
+    }
+
+    /**
+     * Moves the reader to the start of the first element in the SOAP body. Returns false if the body is empty.
+     */
+    private static boolean moveToPayload(final XMLStreamReader reader) throws XMLStreamException {
+        // Envelope
+        reader.nextTag();
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if ("Body".equals(reader.getLocalName())) {
+                return reader.nextTag() == XMLStreamConstants.START_ELEMENT;
+            }
+            skipElement(reader);
+        }
+        return false;
+    }
+
+    private static void skipElement(final XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    private static PaapiTransportException readFault(final XMLStreamReader reader, final int statusCode)
+            throws XMLStreamException {
+        String faultCode = null;
+        String faultString = null;
+        while (reader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if ("faultcode".equals(reader.getLocalName())) {
+                faultCode = localPart(reader.getElementText().trim());
+            } else if ("faultstring".equals(reader.getLocalName())) {
+                faultString = reader.getElementText().trim();
+            } else {
+                skipElement(reader);
+            }
+        }
+        return new PaapiTransportException(faultCode + ": " + faultString + " (HTTP status code " + statusCode + ")",
+                statusCode, faultCode);
+    }
+
+    private static void close(final XMLStreamReader reader) {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (final XMLStreamException e) {
+                // Underlying stream is closed with the response
+            }
+        }
+    }
+
+    static PaapiTransportException statusException(final TransportResponse response) {
+        return new PaapiTransportException("The server sent HTTP status code " + response.getStatusCode() + ": "
+                + response.getReasonPhrase(), response.getStatusCode(), null);
+    }
+
+    static String localPart(final String qualifiedName) {
+        return qualifiedName.substring(qualifiedName.indexOf(':') + 1);
+    }
+
+    private static Marshaller newMarshaller() {
+        try {
+            final Marshaller marshaller = getContext().createMarshaller();
+            marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+            marshaller.setProperty(Marshaller.JAXB_ENCODING, "UTF-8");
+            return marshaller;
+        } catch (final JAXBException e) {
+            throw new IllegalStateException("Could not create Marshaller", e);
+        }
+    }
+
+    private static Unmarshaller newUnmarshaller() {
+        try {
+            return getContext().createUnmarshaller();
+        } catch (final JAXBException e) {
+            throw new IllegalStateException("Could not create Unmarshaller", e);
+        }
+    }
+
+    private static XMLInputFactory newInputFactory() {
+        final XMLInputFactory factory = XMLInputFactory.newInstance();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+        return factory;
+    }
+
+    private static class ContextHolder {
+        private static final JAXBContext CONTEXT = createContext();
+
+        private static JAXBContext createContext() {
+            try {
+                return JAXBContext.newInstance(ObjectFactory.class);
+            } catch (final JAXBException e) {
+                throw new IllegalStateException("Could not create JAXBContext", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Token bucket rate limiter. Permits are added at a fixed rate, up to {@code burst} permits can be saved up. The
+ * bucket is implemented as the theoretical arrival time of the next request (GCRA), so it needs no lock and no refill
+ * thread. A bucket with an infinite rate grants every permit at once.
+ */
+public class TokenBucket {
+
+    private volatile long intervalNanos;
+    private final int burst;
+    private final AtomicLong theoreticalArrival;
+    private final Ticker ticker;
+
+    private final LongAdder granted = new LongAdder();
+    private final LongAdder waited = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder waitNanos = new LongAdder();
+
+    public TokenBucket(final double permitsPerSecond, final int burst) {
+        this(permitsPerSecond, burst, Ticker.SYSTEM);
+    }
+
+    TokenBucket(final double permitsPerSecond, final int burst, final Ticker ticker) {
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1.");
+        }
+        this.burst = burst;
+        this.ticker = ticker;
+        setRate(permitsPerSecond);
+        // Start with a full bucket
+        theoreticalArrival = new AtomicLong(ticker.read() - burst * intervalNanos);
+    }
+
+    /**
+     * Takes a permit if one is available right now.
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Takes a permit, waiting at most the given time for it. Returns false without waiting if no permit will be
+     * available in time.
+     */
+    public boolean tryAcquire(final long timeout, final TimeUnit unit) {
+        final long wait = reserve(unit.toNanos(timeout));
+        if (wait < 0) {
+            rejected.increment();
+            return false;
+        }
+        return await(wait);
+    }
+
+    /**
+     * Takes a permit, blocking until one is available.
+     */
+    public void acquire() {
+        await(reserve(Long.MAX_VALUE));
+    }
+
+    /**
+     * Takes a permit without waiting for it and returns the nanoseconds until it may be used, for callers which wait
+     * without blocking a thread. Returns -1 without taking a permit if it would not be available within the given
+     * time.
+     */
+    long acquireLater(final long maxWaitNanos) {
+        final long wait = reserve(maxWaitNanos);
+        if (wait < 0) {
+            rejected.increment();
+        } else if (wait == 0) {
+            granted.increment();
+        } else {
+            waited.increment();
+            waitNanos.add(wait);
+        }
+        return wait;
+    }
+
+    /**
+     * Gives back a permit taken by {@link #acquireLater(long)} which was not used, e.g. because the request was
+     * cancelled while it waited. The bucket never holds more than {@code burst} permits.
+     */
+    void refund() {
+        final long interval = intervalNanos;
+        theoreticalArrival.updateAndGet(t -> Math.max(t - interval, ticker.read() - burst * interval));
+    }
+
+    /**
+     * Reserves the next permit if it is available within the given time and returns the time to wait for it, or -1
+     * if it is not.
+     */
+    private long reserve(final long maxWaitNanos) {
+        while (true) {
+            final long now = ticker.read();
+            final long interval = intervalNanos;
+            final long current = theoreticalArrival.get();
+            final long wait = Math.max(0, current - (burst - 1) * interval - now);
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            if (theoreticalArrival.compareAndSet(current, Math.max(current, now) + interval)) {
+                return wait;
+            }
+        }
+    }
+
+    private boolean await(final long wait) {
+        if (wait == 0) {
+            granted.increment();
+            return true;
+        }
+        waited.increment();
+        waitNanos.add(wait);
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RateLimitExceededException("Interrupted while waiting for a permit");
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of permits which can be taken right now, negative if permits are already reserved.
+     */
+    public double getAvailablePermits() {
+        final long interval = intervalNanos;
+        if (interval == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        final long saved = ticker.read() - theoreticalArrival.get() + burst * interval;
+        return Math.min((double) saved / interval, burst);
+    }
+
+    public double getRate() {
+        final long interval = intervalNanos;
+        return interval == 0 ? Double.POSITIVE_INFINITY : (double) TimeUnit.SECONDS.toNanos(1) / interval;
+    }
+
+    /**
+     * Changes the rate, already reserved permits are not affected. {@link Double#POSITIVE_INFINITY} disables the limit.
+     */
+    public void setRate(final double permitsPerSecond) {
+        if (!(permitsPerSecond > 0)) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive.");
+        }
+        intervalNanos = Double.isInfinite(permitsPerSecond) ? 0
+                : Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Returns the number of permits granted without waiting.
+     */
+    public long getGranted() {
+        return granted.sum();
+    }
+
+    /**
+     * Returns the number of permits granted after waiting.
+     */
+    public long getWaited() {
+        return waited.sum();
+    }
+
+    /**
+     * Returns the number of permits refused because none was available in time.
+     */
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the total time spent waiting for permits.
+     */
+    public long getWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.sum());
+    }
+
+    @Override
+    public String toString() {
+        return "TokenBucket [rate=" + getRate() + ", burst=" + burst + ", granted=" + getGranted() + ", waited="
+                + getWaited() + ", rejected=" + getRejected() + "]";
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+/**
+ * Snapshot of the connection pool of a {@link PaapiTransport}.
+ */
+public class TransportMetrics {
+
+    private final int leased;
+    private final int idle;
+    private final long created;
+    private final long evicted;
+
+    public TransportMetrics(final int leased, final int idle, final long created, final long evicted) {
+        this.leased = leased;
+        this.idle = idle;
+        this.created = created;
+        this.evicted = evicted;
+    }
+
+    /**
+     * Returns the number of connections currently in use.
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * Returns the number of open connections waiting to be reused.
+     */
+    public int getIdle() {
+        return idle;
+    }
+
+    /**
+     * Returns the total number of connections opened so far.
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * Returns the total number of idle or expired connections closed by the pool.
+     */
+    public long getEvicted() {
+        return evicted;
+    }
+
+    @Override
+    public String toString() {
+        return "TransportMetrics [leased=" + leased + ", idle=" + idle + ", created=" + created + ", evicted="
+                + evicted + "]";
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.io.IOException;
+import java.util.List;
+
+import javax.xml.ws.Holder;
+import javax.xml.ws.WebServiceException;
+
+import com.ecs.client.jax.AWSECommerceServicePortType;
+import com.ecs.client.jax.BrowseNodeLookup;
+import com.ecs.client.jax.BrowseNodeLookupRequest;
+import com.ecs.client.jax.BrowseNodeLookupResponse;
+import com.ecs.client.jax.BrowseNodes;
+import com.ecs.client.jax.Cart;
+import com.ecs.client.jax.CartAdd;
+import com.ecs.client.jax.CartAddRequest;
+import com.ecs.client.jax.CartAddResponse;
+import com.ecs.client.jax.CartClear;
+import com.ecs.client.jax.CartClearRequest;
+import com.ecs.client.jax.CartClearResponse;
+import com.ecs.client.jax.CartCreate;
+import com.ecs.client.jax.CartCreateRequest;
+import com.ecs.client.jax.CartCreateResponse;
+import com.ecs.client.jax.CartGet;
+import com.ecs.client.jax.CartGetRequest;
+import com.ecs.client.jax.CartGetResponse;
+import com.ecs.client.jax.CartModify;
+import com.ecs.client.jax.CartModifyRequest;
+import com.ecs.client.jax.CartModifyResponse;
+import com.ecs.client.jax.ItemLookup;
+import com.ecs.client.jax.ItemLookupRequest;
+import com.ecs.client.jax.ItemLookupResponse;
+import com.ecs.client.jax.ItemSearch;
+import com.ecs.client.jax.ItemSearchRequest;
+import com.ecs.client.jax.ItemSearchResponse;
+import com.ecs.client.jax.Items;
+import com.ecs.client.jax.OperationRequest;
+import com.ecs.client.jax.SimilarityLookup;
+import com.ecs.client.jax.SimilarityLookupRequest;
+import com.ecs.client.jax.SimilarityLookupResponse;
+
+/**
+ * Port which sends requests through a {@link PaapiTransport} instead of the JAX-WS runtime. It is stateless and
+ * therefore thread-safe.
+ */
+class TransportPort implements AWSECommerceServicePortType {
+
+    private static final String SOAP_ACTION_PREFIX = "http://soap.amazon.com/";
+
+    private final String endpoint;
+    private final PaapiTransport transport;
+    private final RequestSigner signer;
+    private final ItemLookupTemplateEncoder itemLookupEncoder;
+    private final CompressionMetrics compressionMetrics;
+
+    TransportPort(final Marketplace marketplace, final PaapiTransport transport, final RequestSigner signer,
+            final ItemLookupTemplateEncoder itemLookupEncoder, final CompressionMetrics compressionMetrics) {
+        endpoint = marketplace.getEndpoint();
+        this.transport = transport;
+        this.signer = signer;
+        this.itemLookupEncoder = itemLookupEncoder;
+        this.compressionMetrics = compressionMetrics;
+    }
+
+    @Override
+    public void itemSearch(final String marketplaceDomain, final String awsAccessKeyId, final String associateTag,
+            final String xmlEscaping, final String validate, final ItemSearchRequest shared,
+            final List<ItemSearchRequest> request, final Holder<OperationRequest> operationRequest,
+            final Holder<List<Items>> items) {
+        final ItemSearch wrapper = new ItemSearch();
+        wrapper.setMarketplaceDomain(marketplaceDomain);
+        wrapper.setAWSAccessKeyId(awsAccessKeyId);
+        wrapper.setAssociateTag(associateTag);
+        wrapper.setValidate(validate);
+        wrapper.setXMLEscaping(xmlEscaping);
+        wrapper.setShared(shared);
+        if (request != null) {
+            wrapper.getRequest().addAll(request);
+        }
+        final ItemSearchResponse response = invoke("ItemSearch", wrapper, ItemSearchResponse.class);
+        operationRequest.value = response.getOperationRequest();
+        items.value = response.getItems();
+    }
+
+    @Override
+    public void itemLookup(final String marketplaceDomain, final String awsAccessKeyId, final String associateTag,
+            final String validate, final String xmlEscaping, final ItemLookupRequest shared,
+            final List<ItemLookupRequest> request, final Holder<OperationRequest> operationRequest,
+            final Holder<List<Items>> items) {
+        final ItemLookup wrapper = new ItemLookup();
+        wrapper.setMarketplaceDomain(marketplaceDomain);
+        wrapper.setAWSAccessKeyId(awsAccessKeyId);
+        wrapper.setAssociateTag(associateTag);
+        wrapper.setValidate(validate);
+        wrapper.setXMLEscaping(xmlEscaping);
+        wrapper.setShared(shared);
+        if (request != null) {
+            wrapper.getRequest().addAll(request);
+        }
+        final ItemLookupResponse response = invoke("ItemLookup", wrapper, ItemLookupResponse.class);
+        operationRequest.value = response.getOperationRequest();
+        items.value = response.getItems();
+    }
+
+    @Override
+    public void browseNodeLookup(final String marketplaceDomain, final String awsAccessKeyId, final String associateTag,
+            final String validate, final String xmlEscaping, final BrowseNodeLookupRequest shared,
+            final List<BrowseNodeLookupRequest> request, final Holder<OperationRequest> operationRequest,
+            final Holder<List<BrowseNodes>> browseNodes) {
+        final BrowseNodeLookup wrapper = new BrowseNodeLookup();
+        wrapper.setMarketplaceDomain(marketplaceDomain);
+        wrapper.setAWSAccessKeyId(awsAccessKeyId);
+        wrapper.setAssociateTag(associateTag);
+        wrapper.setValidate(validate);
+        wrapper.setXMLEscaping(xmlEscaping);
+        wrapper.setShared(shared);
+        if (request != null) {
+            wrapper.getRequest().addAll(request);
+        }
+        final BrowseNodeLookupResponse response = invoke("BrowseNodeLookup", wrapper, BrowseNodeLookupResponse.class);
+        operationRequest.value = response.getOperationRequest();
+        browseNodes.value = response.getBrowseNodes();
+    }
+
+    @Override
+    public void similarityLookup(final String marketplaceDomain, final String awsAccessKeyId, final String associateTag,
+            final String validate, final String xmlEscaping, final SimilarityLookupRequest shared,
+            final List<SimilarityLookupRequest> request, final Holder<OperationRequest> operationRequest,
+            final Holder<List<Items>> items) {
+        final SimilarityLookup wrapper = new SimilarityLookup();
+        wrapper.setMarketplaceDomain(marketplaceDomain);
+        wrapper.setAWSAccessKeyId(awsAccessKeyId);
+        wrapper.setAssociateTag(associateTag);
+        wrapper.setValidate(validate);
+        wrapper.setXMLEscaping(xmlEscaping);
+        wrapper.setShared(shared);
+        if (request != null) {
+            wrapper.getRequest().addAll(request);
+        }
+        final SimilarityLookupResponse response = invoke("SimilarityLookup", wrapper, SimilarityLookupResponse.class);
+        operationRequest.value = response.getOperationRequest();
+        items.value = response.getItems();
+    }
+
+    @Override
+    public void cartGet(final String marketplaceDomain, final String awsAccessKeyId, final String associateTag,
+            final String validate, final String xmlEscaping, final CartGetRequest shared,
+            final List<CartGetRequest> request, final Holder<OperationRequest> operationRequest,
+            final Holder<List<Cart>> cart) {
+        final CartGet wrapper = new CartGet();
+        wrapper.setMarketplaceDomain(marketplaceDomain);
+        wrapper.setAWSAccessKeyId(awsAccessKeyId);
+        wrapper.setAssociateTag(associateTag);
+        wrapper.setValidate(validate);
+        wrapper.setXMLEscaping(xmlEscaping);
+        wrapper.setShared(shared);
+        if (request != null) {
+            wrapper.getRequest().addAll(request);
+        }
+        final CartGetResponse response = invoke("CartGet", wrapper, CartGetResponse.class);
+        operationRequest.value = response.getOperationRequest();
+        cart.value = response.getCart();
+    }
+
+    @Override
+    public void cartCreate(final String marketplaceDomain, final String awsAccessKeyId, final String associateTag,
+            final String validate, final String xmlEscaping, final CartCreateRequest shared,
+            final List<CartCreateRequest> request, final Holder<OperationRequest> operationRequest,
+            final Holder<List<Cart>> cart) {
+        final CartCreate wrapper = new CartCreate();
+        wrapper.setMarketplaceDomain(marketplaceDomain);
+        wrapper.setAWSAccessKeyId(awsAccessKeyId);
+        wrapper.setAssociateTag(associateTag);
+        wrapper.setValidate(validate);
+        wrapper.setXMLEscaping(xmlEscaping);
+        wrapper.setShared(shared);
+        if (request != null) {
+            wrapper.getRequest().addAll(request);
+        }
+        final CartCreateResponse response = invoke("CartCreate", wrapper, CartCreateResponse.class);
+        operationRequest.value = response.getOperationRequest();
+        cart.value = response.getCart();
+    }
+
+    @Override
+    public void cartAdd(final String marketplaceDomain, final String awsAccessKeyId, final String associateTag,
+            final String validate, final String xmlEscaping, final CartAddRequest shared,
+            final List<CartAddRequest> request, final Holder<OperationRequest> operationRequest,
+            final Holder<List<Cart>> cart) {
+        final CartAdd wrapper = new CartAdd();
+        wrapper.setMarketplaceDomain(marketplaceDomain);
+        wrapper.setAWSAccessKeyId(awsAccessKeyId);
+        wrapper.setAssociateTag(associateTag);
+        wrapper.setValidate(validate);
+        wrapper.setXMLEscaping(xmlEscaping);
+        wrapper.setShared(shared);
+        if (request != null) {
+            wrapper.getRequest().addAll(request);
+        }
+        final CartAddResponse response = invoke("CartAdd", wrapper, CartAddResponse.class);
+        operationRequest.value = response.getOperationRequest();
+        cart.value = response.getCart();
+    }
+
+    @Override
+    public void cartModify(final String marketplaceDomain, final String awsAccessKeyId, final String associateTag,
+            final String validate, final String xmlEscaping, final CartModifyRequest shared,
+            final List<CartModifyRequest> request, final Holder<OperationRequest> operationRequest,
+            final Holder<List<Cart>> cart) {
+        final CartModify wrapper = new CartModify();
+        wrapper.setMarketplaceDomain(marketplaceDomain);
+        wrapper.setAWSAccessKeyId(awsAccessKeyId);
+        wrapper.setAssociateTag(associateTag);
+        wrapper.setValidate(validate);
+        wrapper.setXMLEscaping(xmlEscaping);
+        wrapper.setShared(shared);
+        if (request != null) {
+            wrapper.getRequest().addAll(request);
+        }
+        final CartModifyResponse response = invoke("CartModify", wrapper, CartModifyResponse.class);
+        operationRequest.value = response.getOperationRequest();
+        cart.value = response.getCart();
+    }
+
+    @Override
+    public void cartClear(final String marketplaceDomain, final String awsAccessKeyId, final String associateTag,
+            final String validate, final String xmlEscaping, final CartClearRequest shared,
+            final List<CartClearRequest> request, final Holder<OperationRequest> operationRequest,
+            final Holder<List<Cart>> cart) {
+        final CartClear wrapper = new CartClear();
+        wrapper.setMarketplaceDomain(marketplaceDomain);
+        wrapper.setAWSAccessKeyId(awsAccessKeyId);
+        wrapper.setAssociateTag(associateTag);
+        wrapper.setValidate(validate);
+        wrapper.setXMLEscaping(xmlEscaping);
+        wrapper.setShared(shared);
+        if (request != null) {
+            wrapper.getRequest().addAll(request);
+        }
+        final CartClearResponse response = invoke("CartClear", wrapper, CartClearResponse.class);
+        operationRequest.value = response.getOperationRequest();
+        cart.value = response.getCart();
+    }
+
+    private <T> T invoke(final String operation, final Object wrapper, final Class<T> responseType)
+            throws WebServiceException {
+        final EnvelopeBuffer envelope = EnvelopeBuffer.get();
+        if (wrapper instanceof ItemLookup && ItemLookupTemplateEncoder.supports((ItemLookup) wrapper)) {
+            itemLookupEncoder.encode((ItemLookup) wrapper, signer, envelope);
+        } else {
+            SoapCodec.encode(wrapper, operation, signer, envelope);
+        }
+        try (TransportResponse response = transport.send(endpoint, SOAP_ACTION_PREFIX + operation, envelope.array(),
+                0, envelope.size())) {
+            final T result = SoapCodec.decode(response, responseType);
+            // The parser stops after the payload, the rest of the envelope was transferred as well
+            response.drain();
+            compressionMetrics.record(operation, response.getCompressedBytes(), response.getUncompressedBytes());
+            return result;
+        } catch (final IOException e) {
+            throw new WebServiceException(operation + " failed: " + e.getMessage(), e);
+        } finally {
+            envelope.release();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Response of a {@link PaapiTransport}. A gzip or deflate encoded body is decompressed while it is read. Decompression
+ * starts with the first read of a non-empty body, so the status of a response with an empty or not actually
+ * compressed body, e.g. a plain text 503, can still be read. Closing the response releases the connection back to the
+ * pool.
+ */
+public class TransportResponse implements Closeable {
+
+    private final int statusCode;
+    private final String reasonPhrase;
+    private final CountingInputStream compressed;
+    private final CountingInputStream uncompressed;
+    private final Closeable connection;
+
+    public TransportResponse(final int statusCode, final String reasonPhrase, final InputStream body,
+            final Closeable connection) throws IOException {
+        this(statusCode, reasonPhrase, body, null, connection);
+    }
+
+    /**
+     * @param contentEncoding
+     *            value of the Content-Encoding header, {@code gzip} and {@code deflate} are supported
+     */
+    public TransportResponse(final int statusCode, final String reasonPhrase, final InputStream body,
+            final String contentEncoding, final Closeable connection) throws IOException {
+        this.statusCode = statusCode;
+        this.reasonPhrase = reasonPhrase;
+        this.connection = connection;
+        if (body == null) {
+            compressed = null;
+            uncompressed = null;
+        } else {
+            compressed = new CountingInputStream(body);
+            uncompressed = new CountingInputStream(new DecodingInputStream(compressed, contentEncoding));
+        }
+    }
+
+    private static InputStream decode(final InputStream in, final String contentEncoding) throws IOException {
+        if (contentEncoding == null || contentEncoding.equalsIgnoreCase("identity")) {
+            return in;
+        }
+        if (contentEncoding.equalsIgnoreCase("gzip") || contentEncoding.equalsIgnoreCase("x-gzip")) {
+            return new GZIPInputStream(in, 8192);
+        }
+        if (contentEncoding.equalsIgnoreCase("deflate")) {
+            return new InflaterInputStream(in);
+        }
+        throw new IOException("Unsupported Content-Encoding " + contentEncoding);
+    }
+
+    /**
+     * Decodes the body on first read. An empty body is passed through as is, as it has no compression header.
+     */
+    private static final class DecodingInputStream extends InputStream {
+
+        private final InputStream in;
+        private final String contentEncoding;
+        private InputStream decoded;
+
+        DecodingInputStream(final InputStream in, final String contentEncoding) {
+            this.in = in;
+            this.contentEncoding = contentEncoding;
+        }
+
+        private InputStream decoded() throws IOException {
+            if (decoded == null) {
+                final PushbackInputStream pushback = new PushbackInputStream(in, 1);
+                final int first = pushback.read();
+                if (first == -1) {
+                    decoded = pushback;
+                } else {
+                    pushback.unread(first);
+                    decoded = decode(pushback, contentEncoding);
+                }
+            }
+            return decoded;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return decoded().read();
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            return decoded().read(b, off, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return decoded == null ? 0 : decoded.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (decoded == null) {
+                in.close();
+            } else {
+                decoded.close();
+            }
+        }
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getReasonPhrase() {
+        return reasonPhrase;
+    }
+
+    /**
+     * Returns the decompressed response body, may be {@code null} if the response has no content.
+     */
+    public InputStream getBody() {
+        return uncompressed;
+    }
+
+    /**
+     * Returns the number of body bytes read from the wire so far.
+     */
+    public long getCompressedBytes() {
+        return compressed == null ? 0 : compressed.getCount();
+    }
+
+    /**
+     * Returns the number of decompressed body bytes read so far.
+     */
+    public long getUncompressedBytes() {
+        return uncompressed == null ? 0 : uncompressed.getCount();
+    }
+
+    /**
+     * Reads the rest of the body, e.g. the end of the envelope after the payload was parsed, so that the byte counts
+     * cover the whole response.
+     */
+    void drain() throws IOException {
+        if (uncompressed == null) {
+            return;
+        }
+        final byte[] buffer = new byte[1024];
+        while (uncompressed.read(buffer, 0, buffer.length) != -1) {
+            // Discard
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        connection.close();
+    }
+}
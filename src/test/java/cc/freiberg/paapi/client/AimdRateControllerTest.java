@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class AimdRateControllerTest {
+
+    private final FakeTicker ticker = new FakeTicker();
+    private final TokenBucket bucket = new TokenBucket(10, 1, ticker);
+
+    private AimdRateController controller(final double minRate, final double maxRate) {
+        final AimdRateController controller = new AimdRateController(bucket, minRate, maxRate, ticker);
+        controller.setEnabled(true);
+        return controller;
+    }
+
+    @Test
+    public void doesNothingWhileDisabled() {
+        final AimdRateController controller = controller(1, 20);
+        controller.setEnabled(false);
+
+        controller.onSuccess();
+        controller.onThrottled();
+
+        assertEquals(10, controller.getRate(), 1e-6);
+    }
+
+    @Test
+    public void growsByTheIncreaseEverySecond() {
+        final AimdRateController controller = controller(1, 20);
+
+        // At 10 requests per second ten successes take one second
+        for (int i = 0; i < 10; i++) {
+            controller.onSuccess();
+        }
+
+        assertEquals(10.1, controller.getRate(), 1e-3);
+    }
+
+    @Test
+    public void staysBelowTheMaximum() {
+        final AimdRateController controller = controller(1, 10.05);
+
+        for (int i = 0; i < 100; i++) {
+            controller.onSuccess();
+        }
+
+        assertEquals(10.05, controller.getRate(), 1e-6);
+    }
+
+    @Test
+    public void cutsTheRateByTheDecreaseFactor() {
+        final AimdRateController controller = controller(1, 20);
+        controller.setDecreaseFactor(0.75);
+
+        controller.onThrottled();
+
+        assertEquals(7.5, controller.getRate(), 1e-6);
+    }
+
+    @Test
+    public void cutsTheRateAtMostOncePerSecond() {
+        final AimdRateController controller = controller(1, 20);
+
+        controller.onThrottled();
+        ticker.advance(999, TimeUnit.MILLISECONDS);
+        controller.onThrottled();
+        assertEquals(5, controller.getRate(), 1e-6);
+
+        ticker.advance(1, TimeUnit.MILLISECONDS);
+        controller.onThrottled();
+        assertEquals(2.5, controller.getRate(), 1e-6);
+    }
+
+    @Test
+    public void staysAboveTheMinimum() {
+        final AimdRateController controller = controller(4, 20);
+
+        for (int i = 0; i < 3; i++) {
+            controller.onThrottled();
+            ticker.advance(1, TimeUnit.SECONDS);
+        }
+
+        assertEquals(4, controller.getRate(), 1e-6);
+    }
+
+    @Test
+    public void boundsClampTheCurrentRate() {
+        final AimdRateController controller = controller(1, 20);
+
+        controller.setBounds(1, 5);
+        assertEquals(5, controller.getRate(), 1e-6);
+
+        controller.setBounds(8, 20);
+        assertEquals(8, controller.getRate(), 1e-6);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAMinimumAboveTheMaximum() {
+        controller(5, 4);
+    }
+}
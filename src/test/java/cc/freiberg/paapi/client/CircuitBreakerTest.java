@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import cc.freiberg.paapi.client.CircuitBreaker.State;
+
+public class CircuitBreakerTest {
+
+    private static final PaapiTransportException UNAVAILABLE = new PaapiTransportException("Unavailable", 503,
+            null);
+
+    private final FakeTicker ticker = new FakeTicker();
+    private final CircuitBreaker breaker = new CircuitBreaker("ItemLookup", ticker);
+    private final AtomicInteger calls = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        breaker.setFailureThreshold(3);
+        breaker.setOpenMillis(1000);
+    }
+
+    @Test
+    public void opensAfterConsecutiveFailures() {
+        failTimes(2);
+        assertSame(State.CLOSED, breaker.getState());
+
+        failTimes(1);
+        assertSame(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void successResetsTheFailures() {
+        failTimes(2);
+        succeed();
+        failTimes(2);
+
+        assertSame(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void rejectedRequestsShowTheServiceIsUp() {
+        failTimes(2);
+        failWith(new PaapiTransportException("Bad request", 400, "AWS.InvalidParameterValue"));
+        failTimes(2);
+
+        assertSame(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void localFailuresDoNotCount() {
+        failTimes(2);
+        failWith(new DeadlineExceededException("Deadline exceeded"));
+        failWith(new IllegalArgumentException("Invalid ASIN"));
+
+        failTimes(1);
+        assertSame(State.OPEN, breaker.getState());
+    }
+
+    @Test
+    public void failsFastWhileOpen() {
+        failTimes(3);
+        calls.set(0);
+
+        ticker.advance(999, TimeUnit.MILLISECONDS);
+        assertRejected();
+
+        assertEquals(0, calls.get());
+        assertEquals(1, breaker.getRejected());
+    }
+
+    @Test
+    public void closesWhenTheProbeSucceeds() {
+        failTimes(3);
+        ticker.advance(1, TimeUnit.SECONDS);
+
+        succeed();
+
+        assertSame(State.CLOSED, breaker.getState());
+        assertEquals(1, breaker.getTransitions(State.HALF_OPEN));
+        assertEquals(1, breaker.getTransitions(State.CLOSED));
+    }
+
+    @Test
+    public void opensAgainWhenTheProbeFails() {
+        failTimes(3);
+        ticker.advance(1, TimeUnit.SECONDS);
+
+        failTimes(1);
+
+        assertSame(State.OPEN, breaker.getState());
+        assertEquals(2, breaker.getTransitions(State.OPEN));
+        assertRejected();
+        ticker.advance(1, TimeUnit.SECONDS);
+        succeed();
+        assertSame(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void letsOnlyTheProbesThrough() {
+        failTimes(3);
+        ticker.advance(1, TimeUnit.SECONDS);
+
+        final CompletableFuture<String> probe = new CompletableFuture<>();
+        breaker.callAsync(() -> probe);
+
+        assertSame(State.HALF_OPEN, breaker.getState());
+        assertRejected();
+        probe.complete("ok");
+        assertSame(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void probeWithoutOutcomeFreesItsSlot() {
+        failTimes(3);
+        ticker.advance(1, TimeUnit.SECONDS);
+
+        failWith(new DeadlineExceededException("Deadline exceeded"));
+
+        assertSame(State.HALF_OPEN, breaker.getState());
+        succeed();
+        assertSame(State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void probeOfAnEarlierHalfOpenPeriodFreesNoSlot() {
+        breaker.setHalfOpenProbes(2);
+        failTimes(3);
+        ticker.advance(1, TimeUnit.SECONDS);
+        final CompletableFuture<String> stale = new CompletableFuture<>();
+        breaker.callAsync(() -> stale);
+        failTimes(1);
+        ticker.advance(1, TimeUnit.SECONDS);
+        breaker.callAsync(CompletableFuture::new);
+
+        stale.completeExceptionally(new DeadlineExceededException("Deadline exceeded"));
+
+        breaker.callAsync(CompletableFuture::new);
+        assertRejected();
+    }
+
+    @Test
+    public void asynchronousCallsFailFastWhileOpen() throws Exception {
+        failTimes(3);
+
+        final CompletableFuture<String> result = breaker.callAsync(() -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("ok");
+        });
+
+        try {
+            result.get();
+            fail();
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof CircuitBreakerOpenException);
+        }
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void notifiesListeners() {
+        final List<State> states = new ArrayList<>();
+        breaker.addListener((circuitBreaker, from, to) -> states.add(to));
+
+        failTimes(3);
+        ticker.advance(1, TimeUnit.SECONDS);
+        succeed();
+
+        assertEquals(Arrays.asList(State.OPEN, State.HALF_OPEN, State.CLOSED), states);
+    }
+
+    private void succeed() {
+        assertEquals("ok", breaker.call(() -> {
+            calls.incrementAndGet();
+            return "ok";
+        }));
+    }
+
+    private void failTimes(final int times) {
+        for (int i = 0; i < times; i++) {
+            failWith(UNAVAILABLE);
+        }
+    }
+
+    private void failWith(final RuntimeException failure) {
+        try {
+            breaker.call(() -> {
+                calls.incrementAndGet();
+                throw failure;
+            });
+            fail();
+        } catch (final RuntimeException e) {
+            assertSame(failure, e);
+        }
+    }
+
+    private void assertRejected() {
+        try {
+            breaker.call(() -> "ok");
+            fail();
+        } catch (final CircuitBreakerOpenException e) {
+            // Expected
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class DeadlineTest {
+
+    @Test
+    public void noDeadlineLeavesUnlimitedTime() {
+        assertNull(Deadline.current());
+        assertEquals(Long.MAX_VALUE, Deadline.remainingNanos());
+        Deadline.check("in the test");
+    }
+
+    @Test
+    public void appliesWithinTheCallOnly() {
+        Deadline.withTimeout(1, TimeUnit.MINUTES, () -> {
+            final long remaining = Deadline.remainingNanos();
+            assertTrue(remaining > TimeUnit.SECONDS.toNanos(50) && remaining <= TimeUnit.MINUTES.toNanos(1));
+            return null;
+        });
+
+        assertNull(Deadline.current());
+    }
+
+    @Test
+    public void keepsAnEarlierEnclosingDeadline() {
+        Deadline.withTimeout(1, TimeUnit.SECONDS, () -> {
+            final Deadline outer = Deadline.current();
+            Deadline.withTimeout(1, TimeUnit.MINUTES, () -> {
+                assertSame(outer, Deadline.current());
+                return null;
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void shortensALaterEnclosingDeadline() {
+        Deadline.withTimeout(1, TimeUnit.MINUTES, () -> {
+            final Deadline outer = Deadline.current();
+            Deadline.withTimeout(1, TimeUnit.SECONDS, () -> {
+                assertTrue(Deadline.current().getRemainingMillis() <= 1000);
+                return null;
+            });
+            assertSame(outer, Deadline.current());
+            return null;
+        });
+    }
+
+    @Test
+    public void carriesOverToAnotherThread() throws Exception {
+        final Deadline deadline = Deadline.withTimeout(1, TimeUnit.MINUTES, Deadline::current);
+        final Deadline[] seen = new Deadline[1];
+
+        final Thread thread = new Thread(() -> Deadline.with(deadline, () -> seen[0] = Deadline.current()));
+        thread.start();
+        thread.join();
+
+        assertSame(deadline, seen[0]);
+    }
+
+    @Test
+    public void checkFailsOncePassed() {
+        Deadline.withTimeout(0, TimeUnit.MILLISECONDS, () -> {
+            assertTrue(Deadline.current().isExpired());
+            try {
+                Deadline.check("in the test");
+                fail();
+            } catch (final DeadlineExceededException e) {
+                assertEquals("Deadline exceeded in the test", e.getMessage());
+            }
+            return null;
+        });
+        assertFalse(Deadline.withTimeout(1, TimeUnit.MINUTES, () -> Deadline.current().isExpired()));
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.xml.ws.Holder;
+
+import org.junit.Test;
+
+import com.ecs.client.jax.Errors;
+import com.ecs.client.jax.Items;
+import com.ecs.client.jax.Request;
+
+public class ItemRequestHandlerTest {
+
+    @Test
+    public void returnsTheErrorsOfTheOnlyRequestOfABatch() {
+        // The odd request at the end of a batch is sent alone
+        final Holder<List<Items>> result = new Holder<>(Arrays.asList(invalid("AWS.InvalidParameterValue")));
+
+        ItemRequestHandler.checkForErrors(result, 1);
+
+        assertEquals("AWS.InvalidParameterValue",
+                result.value.get(0).getRequest().getErrors().getError().get(0).getCode());
+    }
+
+    @Test
+    public void returnsTheErrorsOfABatchWhereAllRequestsFailed() {
+        final Holder<List<Items>> result = new Holder<>(
+                Arrays.asList(invalid("AWS.InvalidParameterValue"), invalid("AWS.ECommerceService.NoExactMatches")));
+
+        ItemRequestHandler.checkForErrors(result, 2);
+
+        assertEquals(2, result.value.size());
+    }
+
+    @Test
+    public void returnsTheErrorsOfOneRequestOfABatch() {
+        final Holder<List<Items>> result = new Holder<>(Arrays.asList(valid(), invalid("AWS.InvalidParameterValue")));
+
+        ItemRequestHandler.checkForErrors(result, 2);
+
+        assertEquals(2, result.value.size());
+    }
+
+    @Test
+    public void failsABatchWithAThrottledRequest() {
+        final Holder<List<Items>> result = new Holder<>(Arrays.asList(valid(), invalid("RequestThrottled")));
+        try {
+            ItemRequestHandler.checkForErrors(result, 2);
+            fail("Throttled batch passed");
+        } catch (final PaapiTransportException e) {
+            assertEquals("RequestThrottled", e.getFaultCode());
+            assertTrue(RetryEngine.isRetryable(e));
+            assertTrue(CredentialPool.isThrottled(e));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failsASingleRequestWithErrors() {
+        ItemRequestHandler.checkForErrors(new Holder<>(Arrays.asList(invalid("AWS.InvalidParameterValue"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void failsABatchWithMissingResults() {
+        ItemRequestHandler.checkForErrors(new Holder<>(Arrays.asList(invalid("AWS.InvalidParameterValue"))), 2);
+    }
+
+    @Test(expected = PaapiTransportException.class)
+    public void failsAThrottledSingleRequestRetryably() {
+        ItemRequestHandler.checkForErrors(new Holder<>(Arrays.asList(invalid("RequestThrottled"))));
+    }
+
+    private static Items valid() {
+        final Items items = new Items();
+        items.setRequest(new Request());
+        items.getRequest().setIsValid("True");
+        return items;
+    }
+
+    private static Items invalid(final String... codes) {
+        final Items items = new Items();
+        items.setRequest(new Request());
+        items.getRequest().setIsValid("False");
+        final List<Errors.Error> errors = new ArrayList<>();
+        for (final String code : codes) {
+            final Errors.Error error = new Errors.Error();
+            error.setCode(code);
+            error.setMessage(code + " message");
+            errors.add(error);
+        }
+        items.getRequest().setErrors(new Errors());
+        items.getRequest().getErrors().getError().addAll(errors);
+        return items;
+    }
+}
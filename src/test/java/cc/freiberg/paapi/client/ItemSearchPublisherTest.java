@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import com.ecs.client.jax.Item;
+import com.ecs.client.jax.ItemSearchRequest;
+import com.ecs.client.jax.Items;
+
+public class ItemSearchPublisherTest {
+
+    @Test
+    public void publishesAllPages() throws Exception {
+        final AtomicInteger searches = new AtomicInteger();
+        final ItemSearchPublisher publisher = new ItemSearchPublisher(request -> {
+            searches.incrementAndGet();
+            return page(request.getItemPage().intValue(), 3);
+        }, new ItemSearchRequest());
+        final RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+
+        publisher.subscribe(subscriber);
+
+        assertTrue(subscriber.completed.await(5, TimeUnit.SECONDS));
+        assertEquals(3 * 2, subscriber.items.size());
+        assertEquals("3-1", subscriber.items.get(5).getASIN());
+        assertEquals(3, searches.get());
+    }
+
+    @Test
+    public void cancelStopsTheFetchInFlight() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final ItemSearchPublisher publisher = new ItemSearchPublisher(request -> {
+            started.countDown();
+            try {
+                // Waits for quota
+                Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+            } catch (final InterruptedException e) {
+                interrupted.countDown();
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            return page(1, 1);
+        }, new ItemSearchRequest());
+        final RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        publisher.subscribe(subscriber);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        subscriber.subscription.cancel();
+
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        assertEquals(0, subscriber.items.size());
+        assertEquals(0, subscriber.errors.size());
+    }
+
+    private static List<Items> page(final int number, final int totalPages) {
+        final Items items = new Items();
+        items.setTotalPages(BigInteger.valueOf(totalPages));
+        for (int i = 0; i < 2; i++) {
+            final Item item = new Item();
+            item.setASIN(number + "-" + i);
+            items.getItem().add(item);
+        }
+        return Collections.singletonList(items);
+    }
+
+    private static final class RecordingSubscriber implements Subscriber<Item> {
+
+        private final long initialDemand;
+        private final List<Item> items = Collections.synchronizedList(new ArrayList<>());
+        private final List<Throwable> errors = Collections.synchronizedList(new ArrayList<>());
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile Subscription subscription;
+
+        RecordingSubscriber(final long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(final Subscription s) {
+            subscription = s;
+            s.request(initialDemand);
+        }
+
+        @Override
+        public void onNext(final Item item) {
+            items.add(item);
+        }
+
+        @Override
+        public void onError(final Throwable t) {
+            errors.add(t);
+            completed.countDown();
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RequestSchedulerTest {
+
+    private final RequestScheduler scheduler = new RequestScheduler();
+    private final List<RequestPriority> order = Collections.synchronizedList(new ArrayList<>());
+    private final List<Thread> waiters = new ArrayList<>();
+
+    @Test
+    public void priorityAppliesWithinTheCall() {
+        assertFalse(RequestScheduler.isPrioritySet());
+        assertSame(RequestPriority.NORMAL, RequestScheduler.getCurrentPriority());
+
+        RequestScheduler.withPriority(RequestPriority.BACKGROUND, () -> {
+            assertSame(RequestPriority.BACKGROUND, RequestScheduler.getCurrentPriority());
+            return RequestScheduler.withPriority(RequestPriority.INTERACTIVE, () -> {
+                assertSame(RequestPriority.INTERACTIVE, RequestScheduler.getCurrentPriority());
+                return null;
+            });
+        });
+
+        assertFalse(RequestScheduler.isPrioritySet());
+    }
+
+    @Test
+    public void priorityIsRestoredAfterAnException() {
+        try {
+            RequestScheduler.withPriority(RequestPriority.BACKGROUND, () -> {
+                throw new IllegalStateException();
+            });
+            fail();
+        } catch (final IllegalStateException e) {
+            assertFalse(RequestScheduler.isPrioritySet());
+        }
+    }
+
+    @Test
+    public void firstRequestDoesNotWait() {
+        scheduler.enter();
+        scheduler.leave();
+        scheduler.enter();
+        scheduler.leave();
+
+        assertEquals(2, scheduler.getAdmitted(RequestPriority.NORMAL));
+    }
+
+    @Test
+    public void picksTheEarliestVirtualFinishTime() throws Exception {
+        scheduler.enter();
+        // Finish times: BACKGROUND 1.1 and 2.1, INTERACTIVE 0.11 and 0.12, NORMAL 0.2
+        queue(RequestPriority.BACKGROUND);
+        queue(RequestPriority.BACKGROUND);
+        queue(RequestPriority.NORMAL);
+        queue(RequestPriority.INTERACTIVE);
+        queue(RequestPriority.INTERACTIVE);
+
+        scheduler.leave();
+        awaitWaiters();
+
+        assertEquals(Arrays.asList(RequestPriority.INTERACTIVE, RequestPriority.INTERACTIVE, RequestPriority.NORMAL,
+                RequestPriority.BACKGROUND, RequestPriority.BACKGROUND), order);
+        assertEquals(2, scheduler.getAdmitted(RequestPriority.BACKGROUND));
+    }
+
+    @Test
+    public void sharesTheQuotaByWeight() throws Exception {
+        scheduler.setWeight(RequestPriority.INTERACTIVE, 2);
+        scheduler.setWeight(RequestPriority.BACKGROUND, 1);
+        scheduler.enter();
+        for (int i = 0; i < 3; i++) {
+            queue(RequestPriority.BACKGROUND);
+        }
+        for (int i = 0; i < 4; i++) {
+            queue(RequestPriority.INTERACTIVE);
+        }
+
+        scheduler.leave();
+        awaitWaiters();
+
+        // Two interactive requests for each background request
+        assertEquals(Arrays.asList(RequestPriority.INTERACTIVE, RequestPriority.INTERACTIVE,
+                RequestPriority.BACKGROUND, RequestPriority.INTERACTIVE, RequestPriority.INTERACTIVE,
+                RequestPriority.BACKGROUND, RequestPriority.BACKGROUND), order);
+    }
+
+    @Test
+    public void dropsQueuedRequestsAfterTheirDeadline() {
+        scheduler.enter();
+        try {
+            Deadline.withTimeout(20, TimeUnit.MILLISECONDS, () -> {
+                scheduler.enter();
+                return null;
+            });
+            fail();
+        } catch (final DeadlineExceededException e) {
+            assertEquals(0, scheduler.getQueued(RequestPriority.NORMAL));
+        }
+        scheduler.leave();
+
+        // The expired request did not keep the turn
+        scheduler.enter();
+        scheduler.leave();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAWeightBelowOne() {
+        scheduler.setWeight(RequestPriority.NORMAL, 0);
+    }
+
+    /**
+     * Starts a thread which waits for its turn with the given priority, records it and hands the turn on.
+     */
+    private void queue(final RequestPriority priority) throws InterruptedException {
+        final int queued = scheduler.getQueued(priority);
+        final Thread waiter = new Thread(() -> RequestScheduler.withPriority(priority, () -> {
+            scheduler.enter();
+            order.add(priority);
+            scheduler.leave();
+            return null;
+        }));
+        waiter.start();
+        waiters.add(waiter);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.getQueued(priority) == queued) {
+            assertTrue("Request not queued", System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitWaiters() throws InterruptedException {
+        for (final Thread waiter : waiters) {
+            waiter.join(TimeUnit.SECONDS.toMillis(5));
+            assertFalse("Request not admitted", waiter.isAlive());
+        }
+    }
+}
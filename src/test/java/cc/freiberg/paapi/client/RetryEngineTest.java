@@ -0,0 +1,271 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.ConnectException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.ws.WebServiceException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RetryEngineTest {
+
+    private static final PaapiTransportException SERVER_ERROR = new PaapiTransportException("Unavailable", 503,
+            null);
+    private static final PaapiTransportException BAD_REQUEST = new PaapiTransportException("Bad request", 400,
+            "AWS.InvalidParameterValue");
+
+    private final RetryEngine engine = new RetryEngine();
+
+    @Before
+    public void setUp() {
+        // Retry without waiting
+        engine.setBaseDelayMillis(0);
+        engine.setMaxDelayMillis(0);
+    }
+
+    @Test
+    public void classifiesTemporaryFailuresAsRetryable() {
+        assertTrue(RetryEngine.isRetryable(SERVER_ERROR));
+        assertTrue(RetryEngine.isRetryable(new PaapiTransportException("Throttled", 200, "RequestThrottled")));
+        assertTrue(RetryEngine.isRetryable(new PaapiTransportException("Throttled", 503, "aws:RequestThrottled")));
+        assertTrue(RetryEngine.isRetryable(new PaapiTransportException("Error", 500, null)));
+        assertTrue(RetryEngine.isRetryable(new WebServiceException("The server sent HTTP status code 502: Bad")));
+        assertTrue(RetryEngine.isRetryable(new WebServiceException(new ConnectException("Connection refused"))));
+    }
+
+    @Test
+    public void classifiesPermanentFailuresAsNotRetryable() {
+        assertFalse(RetryEngine.isRetryable(BAD_REQUEST));
+        assertFalse(RetryEngine.isRetryable(new PaapiTransportException("Forbidden", 403, null)));
+        assertFalse(RetryEngine.isRetryable(new WebServiceException("The server sent HTTP status code 404: Not")));
+        assertFalse(RetryEngine.isRetryable(new RateLimitExceededException("No permit")));
+        assertFalse(RetryEngine.isRetryable(new IllegalArgumentException("Invalid ASIN")));
+    }
+
+    @Test
+    public void retriesCartChangesOnlyIfTheyWereNotProcessed() {
+        assertFalse(RetryEngine.isRetryable(new PaapiTransportException("Error", 500, null), "CartAdd"));
+        assertFalse(RetryEngine.isRetryable(new PaapiTransportException("Error", 500, "InternalError"), "CartAdd"));
+        assertTrue(RetryEngine.isRetryable(new PaapiTransportException("Throttled", 503, null), "CartModify"));
+        assertTrue(RetryEngine.isRetryable(new PaapiTransportException("Throttled", 200, "RequestThrottled"),
+                "CartCreate"));
+        assertTrue(RetryEngine.isRetryable(new WebServiceException(new ConnectException("Connection refused")),
+                "CartClear"));
+        assertTrue(RetryEngine.isRetryable(new PaapiTransportException("Error", 500, null), "CartGet"));
+    }
+
+    @Test
+    public void delayStartsAtTheBase() {
+        engine.setBaseDelayMillis(100);
+        engine.setMaxDelayMillis(10000);
+
+        assertEquals(100, engine.nextDelay(0));
+        assertEquals(100, engine.nextDelay(20));
+    }
+
+    @Test
+    public void delayIsBetweenTheBaseAndThreeTimesThePreviousDelay() {
+        engine.setBaseDelayMillis(100);
+        engine.setMaxDelayMillis(10000);
+
+        boolean above = false;
+        for (int i = 0; i < 1000; i++) {
+            final long delay = engine.nextDelay(1000);
+            assertTrue("Delay " + delay, delay >= 100 && delay <= 3000);
+            above |= delay > 1000;
+        }
+        assertTrue(above);
+    }
+
+    @Test
+    public void delayIsCappedAtTheMaximum() {
+        engine.setBaseDelayMillis(100);
+        engine.setMaxDelayMillis(1000);
+
+        for (int i = 0; i < 1000; i++) {
+            final long delay = engine.nextDelay(5000);
+            assertTrue("Delay " + delay, delay >= 100 && delay <= 1000);
+        }
+    }
+
+    @Test
+    public void retriesUntilTheCallSucceeds() {
+        final AtomicInteger calls = new AtomicInteger();
+
+        final String result = engine.call("ItemLookup", () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw SERVER_ERROR;
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", result);
+        assertEquals(3, calls.get());
+        assertEquals(2, engine.getRetries());
+    }
+
+    @Test
+    public void givesUpAfterTheMaximumRetries() {
+        engine.setMaxRetries(2);
+        final AtomicInteger calls = new AtomicInteger();
+
+        try {
+            engine.call("ItemLookup", () -> {
+                calls.incrementAndGet();
+                throw SERVER_ERROR;
+            });
+            fail();
+        } catch (final PaapiTransportException e) {
+            assertSame(SERVER_ERROR, e);
+        }
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void doesNotRetryPermanentFailures() {
+        final AtomicInteger calls = new AtomicInteger();
+
+        try {
+            engine.call("ItemLookup", () -> {
+                calls.incrementAndGet();
+                throw BAD_REQUEST;
+            });
+            fail();
+        } catch (final PaapiTransportException e) {
+            assertSame(BAD_REQUEST, e);
+        }
+        assertEquals(1, calls.get());
+        assertEquals(0, engine.getRetries());
+    }
+
+    @Test
+    public void stopsRetryingWhenTheBudgetIsExhausted() {
+        engine.setMaxRetries(100);
+        engine.setBudgetRatio(0);
+        final AtomicInteger calls = new AtomicInteger();
+
+        callFailing(calls);
+
+        // The budget starts with ten retries
+        assertEquals(11, calls.get());
+        assertEquals(10, engine.getRetries());
+        assertEquals(1, engine.getBudgetExhausted());
+
+        calls.set(0);
+        callFailing(calls);
+        assertEquals(1, calls.get());
+        assertEquals(2, engine.getBudgetExhausted());
+    }
+
+    @Test
+    public void callsRefillTheBudget() {
+        engine.setMaxRetries(100);
+        engine.setBudgetRatio(0);
+        callFailing(new AtomicInteger());
+        engine.setBudgetRatio(0.5);
+
+        // Two calls earn one retry
+        engine.call("ItemLookup", () -> "ok");
+        final AtomicInteger calls = new AtomicInteger();
+        callFailing(calls);
+
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void doesNotRetryPastTheDeadline() {
+        engine.setBaseDelayMillis(TimeUnit.SECONDS.toMillis(10));
+        engine.setMaxDelayMillis(TimeUnit.SECONDS.toMillis(10));
+        final AtomicInteger calls = new AtomicInteger();
+
+        try {
+            Deadline.withTimeout(1, TimeUnit.SECONDS, () -> engine.call("ItemLookup", () -> {
+                calls.incrementAndGet();
+                throw SERVER_ERROR;
+            }));
+            fail();
+        } catch (final PaapiTransportException e) {
+            assertEquals(1, calls.get());
+        }
+    }
+
+    @Test
+    public void retriesAsynchronousCalls() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+
+        final CompletableFuture<String> result = engine.callAsync("ItemLookup", () -> {
+            final CompletableFuture<String> future = new CompletableFuture<>();
+            if (calls.incrementAndGet() < 3) {
+                future.completeExceptionally(SERVER_ERROR);
+            } else {
+                future.complete("ok");
+            }
+            return future;
+        });
+
+        assertEquals("ok", result.get(5, TimeUnit.SECONDS));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void failsAsynchronousCallsWithTheLastFailure() throws Exception {
+        engine.setMaxRetries(1);
+
+        final CompletableFuture<String> result = engine.callAsync("ItemLookup", () -> {
+            final CompletableFuture<String> future = new CompletableFuture<>();
+            future.completeExceptionally(SERVER_ERROR);
+            return future;
+        });
+
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail();
+        } catch (final ExecutionException e) {
+            assertSame(SERVER_ERROR, e.getCause());
+        }
+        assertEquals(1, engine.getRetries());
+    }
+
+    private void callFailing(final AtomicInteger calls) {
+        try {
+            engine.call("ItemLookup", () -> {
+                calls.incrementAndGet();
+                throw SERVER_ERROR;
+            });
+            fail();
+        } catch (final PaapiTransportException e) {
+            // Expected
+        }
+    }
+}
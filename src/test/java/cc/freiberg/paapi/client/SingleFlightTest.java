@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.ecs.client.jax.ItemLookupRequest;
+
+public class SingleFlightTest {
+
+    private final SingleFlight singleFlight = new SingleFlight();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    @After
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void keyIgnoresTheOrderOfResponseGroups() {
+        assertEquals(SingleFlight.key("ItemLookup", "DE", lookup(Arrays.asList("B01"), "Small", "Offers")),
+                SingleFlight.key("ItemLookup", "DE", lookup(Arrays.asList("B01"), "Offers", "Small")));
+    }
+
+    @Test
+    public void keyKeepsTheOrderOfItemIds() {
+        assertNotEquals(SingleFlight.key("ItemLookup", "DE", lookup(Arrays.asList("B01", "B02"), "Small")),
+                SingleFlight.key("ItemLookup", "DE", lookup(Arrays.asList("B02", "B01"), "Small")));
+    }
+
+    @Test
+    public void keyDistinguishesMarketplaces() {
+        assertNotEquals(SingleFlight.key("ItemLookup", "DE", lookup(Arrays.asList("B01"), "Small")),
+                SingleFlight.key("ItemLookup", "US", lookup(Arrays.asList("B01"), "Small")));
+    }
+
+    @Test
+    public void keySkipsNullResponseGroups() {
+        assertEquals(SingleFlight.key("ItemLookup", "DE", lookup(Arrays.asList("B01"), "Small", null)),
+                SingleFlight.key("ItemLookup", "DE", lookup(Arrays.asList("B01"), "Small")));
+        assertEquals(SingleFlight.key("ItemLookup", "DE", lookup(Arrays.asList("B01"), (String) null)),
+                SingleFlight.key("ItemLookup", "DE", lookup(Arrays.asList("B01"))));
+    }
+
+    @Test
+    public void coalescesIdenticalCallsInFlight() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger sent = new AtomicInteger();
+        final Object response = new Object();
+        final Future<Object> first = executor.submit(() -> singleFlight.call("ItemLookup", "DE",
+                lookup(Arrays.asList("B01"), "Small"), () -> {
+                    sent.incrementAndGet();
+                    await(release);
+                    return response;
+                }));
+        while (sent.get() == 0) {
+            Thread.sleep(1);
+        }
+        final AtomicReference<Thread> follower = new AtomicReference<>();
+        final Future<Object> second = executor.submit(() -> {
+            follower.set(Thread.currentThread());
+            return singleFlight.call("ItemLookup", "DE", lookup(Arrays.asList("B01"), "Small"), () -> {
+                sent.incrementAndGet();
+                return new Object();
+            });
+        });
+        awaitWaiting(follower);
+        release.countDown();
+
+        assertSame(response, first.get());
+        assertSame(response, second.get());
+        assertEquals(1, sent.get());
+        assertEquals(1, singleFlight.getCoalesced());
+    }
+
+    @Test
+    public void sharesFailuresFromAmazon() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger sent = new AtomicInteger();
+        final PaapiTransportException failure = new PaapiTransportException("Unavailable", 503, null);
+        final Future<Object> first = executor.submit(() -> singleFlight.call("ItemLookup", "DE",
+                lookup(Arrays.asList("B01"), "Small"), () -> {
+                    sent.incrementAndGet();
+                    await(release);
+                    throw failure;
+                }));
+        final Future<Object> second = follow(sent);
+        release.countDown();
+
+        assertSame(failure, cause(first));
+        assertSame(failure, cause(second));
+        assertEquals(1, sent.get());
+        assertEquals(1, singleFlight.getCoalesced());
+    }
+
+    @Test
+    public void reissuesWhenTheFirstCallerFailedOnItsOwn() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger sent = new AtomicInteger();
+        final DeadlineExceededException failure = new DeadlineExceededException("Deadline exceeded");
+        final Future<Object> first = executor.submit(() -> singleFlight.call("ItemLookup", "DE",
+                lookup(Arrays.asList("B01"), "Small"), () -> {
+                    sent.incrementAndGet();
+                    await(release);
+                    throw failure;
+                }));
+        final Future<Object> second = follow(sent);
+        release.countDown();
+
+        assertSame(failure, cause(first));
+        assertEquals("reissued", second.get());
+        assertEquals(2, sent.get());
+        assertEquals(0, singleFlight.getCoalesced());
+    }
+
+    @Test
+    public void sendsDifferentCallsSeparately() {
+        singleFlight.call("ItemLookup", "DE", lookup(Arrays.asList("B01"), "Small"), Object::new);
+        singleFlight.call("ItemLookup", "DE", lookup(Arrays.asList("B01"), "Small"), Object::new);
+
+        assertEquals(0, singleFlight.getCoalesced());
+    }
+
+    /**
+     * Waits until the first call was sent, then starts an identical call and waits until it joined the first one.
+     */
+    private Future<Object> follow(final AtomicInteger sent) throws InterruptedException {
+        while (sent.get() == 0) {
+            Thread.sleep(1);
+        }
+        final AtomicReference<Thread> follower = new AtomicReference<>();
+        final Future<Object> future = executor.submit(() -> {
+            follower.set(Thread.currentThread());
+            return singleFlight.call("ItemLookup", "DE", lookup(Arrays.asList("B01"), "Small"), () -> {
+                sent.incrementAndGet();
+                return "reissued";
+            });
+        });
+        awaitWaiting(follower);
+        return future;
+    }
+
+    private static Throwable cause(final Future<Object> future) throws InterruptedException {
+        try {
+            future.get();
+            throw new AssertionError("Call did not fail");
+        } catch (final ExecutionException e) {
+            return e.getCause();
+        }
+    }
+
+    /**
+     * Waits until the thread blocks, e.g. on the call of another caller.
+     */
+    static void awaitWaiting(final AtomicReference<Thread> thread) throws InterruptedException {
+        while (thread.get() == null || thread.get().getState() != Thread.State.WAITING
+                && thread.get().getState() != Thread.State.TIMED_WAITING) {
+            Thread.sleep(1);
+        }
+    }
+
+    static void await(final CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static ItemLookupRequest lookup(final List<String> itemIds, final String... responseGroups) {
+        final ItemLookupRequest request = new ItemLookupRequest();
+        request.getItemId().addAll(itemIds);
+        request.getResponseGroup().addAll(Arrays.asList(responseGroups));
+        return request;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class TokenBucketTest {
+
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    @Test
+    public void startsWithAFullBucket() {
+        final TokenBucket bucket = new TokenBucket(10, 3, ticker);
+
+        assertEquals(3, bucket.getAvailablePermits(), 0);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+        assertEquals(3, bucket.getGranted());
+        assertEquals(1, bucket.getRejected());
+    }
+
+    @Test
+    public void addsOnePermitPerInterval() {
+        final TokenBucket bucket = new TokenBucket(10, 1, ticker);
+        assertTrue(bucket.tryAcquire());
+
+        ticker.advance(INTERVAL - 1, TimeUnit.NANOSECONDS);
+        assertFalse(bucket.tryAcquire());
+        ticker.advance(1, TimeUnit.NANOSECONDS);
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void savesAtMostBurstPermits() {
+        final TokenBucket bucket = new TokenBucket(10, 2, ticker);
+
+        ticker.advance(1, TimeUnit.MINUTES);
+
+        assertEquals(2, bucket.getAvailablePermits(), 0);
+        assertTrue(bucket.tryAcquire());
+        assertTrue(bucket.tryAcquire());
+        assertFalse(bucket.tryAcquire());
+    }
+
+    @Test
+    public void reservesPermitsOneIntervalApart() {
+        final TokenBucket bucket = new TokenBucket(10, 1, ticker);
+
+        assertEquals(0, bucket.acquireLater(Long.MAX_VALUE));
+        assertEquals(INTERVAL, bucket.acquireLater(Long.MAX_VALUE));
+        assertEquals(2 * INTERVAL, bucket.acquireLater(Long.MAX_VALUE));
+        assertEquals(-2, bucket.getAvailablePermits(), 0);
+        assertEquals(1, bucket.getGranted());
+        assertEquals(2, bucket.getWaited());
+        assertEquals(300, bucket.getWaitMillis());
+    }
+
+    @Test
+    public void rejectsReservationsBeyondTheMaximumWait() {
+        final TokenBucket bucket = new TokenBucket(10, 1, ticker);
+        bucket.acquireLater(Long.MAX_VALUE);
+
+        assertEquals(-1, bucket.acquireLater(INTERVAL - 1));
+        assertEquals(1, bucket.getRejected());
+        // The rejected reservation took no permit
+        assertEquals(INTERVAL, bucket.acquireLater(INTERVAL));
+    }
+
+    @Test
+    public void refundGivesBackAReservedPermit() {
+        final TokenBucket bucket = new TokenBucket(10, 1, ticker);
+        bucket.acquireLater(Long.MAX_VALUE);
+        bucket.acquireLater(Long.MAX_VALUE);
+
+        bucket.refund();
+
+        assertEquals(INTERVAL, bucket.acquireLater(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void refundNeverExceedsTheBurst() {
+        final TokenBucket bucket = new TokenBucket(10, 2, ticker);
+
+        bucket.refund();
+        bucket.refund();
+
+        assertEquals(2, bucket.getAvailablePermits(), 0);
+    }
+
+    @Test
+    public void infiniteRateGrantsEveryPermit() {
+        final TokenBucket bucket = new TokenBucket(Double.POSITIVE_INFINITY, 1, ticker);
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(bucket.tryAcquire());
+        }
+        assertEquals(Double.POSITIVE_INFINITY, bucket.getAvailablePermits(), 0);
+    }
+
+    @Test
+    public void newRateAppliesToTheNextPermit() {
+        final TokenBucket bucket = new TokenBucket(10, 1, ticker);
+        bucket.acquireLater(Long.MAX_VALUE);
+
+        bucket.setRate(1);
+
+        assertEquals(1, bucket.getRate(), 0);
+        // The permit reserved at the old rate is still due after 100 ms
+        assertEquals(INTERVAL, bucket.acquireLater(Long.MAX_VALUE));
+        assertEquals(INTERVAL + TimeUnit.SECONDS.toNanos(1), bucket.acquireLater(Long.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsAnEmptyBurst() {
+        new TokenBucket(10, 0, ticker);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2018 Ben Freiberg <freiberg.ben@gmail.com>
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package cc.freiberg.paapi.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+public class TransportResponseTest {
+
+    private static final byte[] BODY = "<Envelope><Body><Items/></Body></Envelope>".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    public void decompressesTheBody() throws IOException {
+        final TransportResponse response = new TransportResponse(200, "OK", new ByteArrayInputStream(gzip(BODY)),
+                "gzip", () -> { });
+
+        assertArrayEquals(BODY, readAll(response.getBody()));
+    }
+
+    @Test
+    public void drainCountsTheUnreadTail() throws IOException {
+        final byte[] compressed = gzip(BODY);
+        final TransportResponse response = new TransportResponse(200, "OK", new ByteArrayInputStream(compressed),
+                "gzip", () -> { });
+        response.getBody().read(new byte[10]);
+
+        response.drain();
+
+        assertEquals(compressed.length, response.getCompressedBytes());
+        assertEquals(BODY.length, response.getUncompressedBytes());
+    }
+
+    @Test
+    public void passesAnEmptyBodyThrough() throws IOException {
+        final TransportResponse response = new TransportResponse(503, "Service Unavailable",
+                new ByteArrayInputStream(new byte[0]), "gzip", () -> { });
+
+        response.drain();
+
+        assertEquals(-1, response.getBody().read());
+        assertEquals(0, response.getCompressedBytes());
+    }
+
+    private static byte[] gzip(final byte[] data) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] readAll(final InputStream in) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[16];
+        for (int n; (n = in.read(buffer)) != -1;) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}